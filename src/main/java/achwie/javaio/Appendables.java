@@ -0,0 +1,36 @@
+package achwie.javaio;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Writes slices of chars to an {@link Appendable} with the bulk methods of the most common targets, which
+ * {@link Appendable#append(CharSequence, int, int)} would otherwise copy into a temporary string first.
+ */
+final class Appendables {
+  private Appendables() {
+  }
+
+  public static void write(Appendable out, char[] chars, int off, int len) throws IOException {
+    if (len == 0)
+      return;
+
+    if (out instanceof Writer)
+      ((Writer) out).write(chars, off, len);
+    else if (out instanceof StringBuilder)
+      ((StringBuilder) out).append(chars, off, len);
+    else
+      out.append(CharBuffer.wrap(chars, off, len));
+  }
+
+  public static void write(Appendable out, String str, int start, int end) throws IOException {
+    if (start == end)
+      return;
+
+    if (out instanceof Writer)
+      ((Writer) out).write(str, start, end - start);
+    else
+      out.append(str, start, end);
+  }
+}
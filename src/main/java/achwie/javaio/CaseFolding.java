@@ -0,0 +1,29 @@
+package achwie.javaio;
+
+/**
+ * Folds chars for case-insensitive matching. Every char is mapped to the lower case of its upper case, which makes
+ * e.g. {@code 'I'}, {@code 'i'} and the dotless <code>'&#x131;'</code> equal. The mapping is precomputed for all
+ * chars, so folding during a search is a single array access.
+ */
+final class CaseFolding {
+  static final char[] TABLE = createTable();
+
+  private CaseFolding() {
+  }
+
+  public static String fold(String str) {
+    final char[] chars = new char[str.length()];
+    for (int i = 0; i < chars.length; i++)
+      chars[i] = TABLE[str.charAt(i)];
+
+    return new String(chars);
+  }
+
+  private static char[] createTable() {
+    final char[] table = new char[Character.MAX_VALUE + 1];
+    for (int ch = 0; ch < table.length; ch++)
+      table[ch] = Character.toLowerCase(Character.toUpperCase((char) ch));
+
+    return table;
+  }
+}
@@ -2,6 +2,8 @@ package achwie.javaio;
 
 import static java.lang.String.*;
 
+import java.io.IOException;
+
 /**
  * 
  * @author Achim Wiedemann, Oct 21, 2013
@@ -57,8 +59,26 @@ class CharRingBuffer implements CharSequence {
   }
 
   public void append(char[] chars, int pos, int length) {
-    for (int i = 0; i < length; i++)
-      append(chars[pos + i]);
+    // Only the last maxSize chars survive
+    if (length >= maxSize) {
+      System.arraycopy(chars, pos + length - maxSize, buffer, 0, maxSize);
+      this.pos = 0;
+      this.length = maxSize;
+      return;
+    }
+
+    final int start = denormalize(this.length);
+    final int copyToEnd = Math.min(maxSize - start, length);
+    System.arraycopy(chars, pos, buffer, start, copyToEnd);
+    System.arraycopy(chars, pos + copyToEnd, buffer, 0, length - copyToEnd);
+
+    final int newLength = this.length + length;
+    if (newLength > maxSize) {
+      incPos(newLength - maxSize);
+      this.length = maxSize;
+    } else {
+      this.length = newLength;
+    }
   }
 
   public void append(String str) {
@@ -94,6 +114,39 @@ class CharRingBuffer implements CharSequence {
     return firstChar;
   }
 
+  /**
+   * Writes the first {@code count} chars to {@code out} (in at most two slices) and removes them from the buffer.
+   * 
+   * @param out The target.
+   * @param count The number of chars to move.
+   * @throws IOException If writing fails.
+   */
+  public void take(Appendable out, int count) throws IOException {
+    if (count < 0 || count > length)
+      throw new IndexOutOfBoundsException(format("Could not take %d chars from a buffer size of %d.", count, length));
+
+    final int copyToEnd = Math.min(maxSize - pos, count);
+    Appendables.write(out, buffer, pos, copyToEnd);
+    if (copyToEnd < count)
+      Appendables.write(out, buffer, 0, count - copyToEnd);
+
+    skip(count);
+  }
+
+  /**
+   * Removes up to {@code count} chars from the beginning of the buffer.
+   * 
+   * @param count The number of chars to remove.
+   * @return The number of chars actually removed.
+   */
+  public int skip(int count) {
+    final int skipped = Math.min(count, length);
+    incPos(skipped);
+    length -= skipped;
+
+    return skipped;
+  }
+
   private int denormalize(int index) {
     return (pos + index) % maxSize;
   }
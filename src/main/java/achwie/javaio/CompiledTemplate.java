@@ -0,0 +1,215 @@
+package achwie.javaio;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A source that has been scanned for keys once and can then be rendered with many different replacement maps. This is
+ * the counterpart to the {@link PropertiesFilterReader} for the case where the same (small) template is rendered over
+ * and over again: the template is split into literal spans and key references at compile time, so rendering only
+ * copies literals and values in bulk.
+ * </p>
+ *
+ * <pre>
+ * final CompiledTemplate template = CompiledTemplate.compile(new FileReader(&quot;input.txt&quot;), props.keySet());
+ * for (Properties p : propertySets)
+ *   System.out.println(template.render(p));
+ * </pre>
+ *
+ * <p>
+ * Keys are matched exactly like the {@link PropertiesFilterReader} does. A key without a value in the map passed to
+ * {@link #render(Map)} is left in the output as it is. Values are held in memory while rendering, so a
+ * {@link StreamedValue} is rejected; it has to be filtered with a {@code PropertiesFilterReader}.
+ * </p>
+ */
+public class CompiledTemplate {
+  private final char[] literals;
+  // Key reference i comes right after the literal span ending at spanEnds[i]
+  private final int[] spanEnds;
+  private final int[] refs;
+  private final String[] keys;
+
+  private CompiledTemplate(char[] literals, int[] spanEnds, int[] refs, String[] keys) {
+    this.literals = literals;
+    this.spanEnds = spanEnds;
+    this.refs = refs;
+    this.keys = keys;
+  }
+
+  /**
+   * Reads the whole source and compiles it into a template.
+   *
+   * @param source The reader to read the template from. It is read until the end but not closed.
+   * @param keys The keys to look for.
+   * @return The compiled template.
+   * @throws IOException If the source could not be read.
+   */
+  public static CompiledTemplate compile(Reader source, Collection<?> keys) throws IOException {
+    char[] buff = new char[4096];
+    int len = 0;
+    int charsRead;
+    while ((charsRead = source.read(buff, len, buff.length - len)) != -1) {
+      len += charsRead;
+      if (len == buff.length)
+        buff = Arrays.copyOf(buff, buff.length * 2);
+    }
+
+    return compile(CharBuffer.wrap(buff, 0, len), keys);
+  }
+
+  /**
+   * Compiles the given char sequence into a template.
+   *
+   * @param source The template.
+   * @param keys The keys to look for.
+   * @return The compiled template.
+   */
+  public static CompiledTemplate compile(CharSequence source, Collection<?> keys) {
+    final List<String> sortedKeys = new ArrayList<>(keys.size());
+    for (Object key : keys)
+      sortedKeys.add(key.toString());
+
+    Collections.sort(sortedKeys);
+
+    final StringListSearchTree searchTree = new StringListSearchTree(sortedKeys);
+    final StringBuilder literals = new StringBuilder(source.length());
+    final Map<String, Integer> keyIds = new HashMap<>();
+    final List<String> distinctKeys = new ArrayList<>();
+    int[] spanEnds = new int[16];
+    int[] refs = new int[16];
+    int refCount = 0;
+
+    for (int i = 0; i < source.length();) {
+      final String key = searchTree.startOf(source, i);
+      if (key == null || key.isEmpty()) {
+        literals.append(source.charAt(i++));
+        continue;
+      }
+
+      Integer keyId = keyIds.get(key);
+      if (keyId == null) {
+        keyId = distinctKeys.size();
+        keyIds.put(key, keyId);
+        distinctKeys.add(key);
+      }
+
+      if (refCount == refs.length) {
+        refs = Arrays.copyOf(refs, refCount * 2);
+        spanEnds = Arrays.copyOf(spanEnds, refCount * 2);
+      }
+      spanEnds[refCount] = literals.length();
+      refs[refCount++] = keyId;
+      i += key.length();
+    }
+
+    final char[] literalChars = new char[literals.length()];
+    literals.getChars(0, literals.length(), literalChars, 0);
+
+    return new CompiledTemplate(literalChars, Arrays.copyOf(spanEnds, refCount), Arrays.copyOf(refs, refCount),
+        distinctKeys.toArray(new String[distinctKeys.size()]));
+  }
+
+  /**
+   * Returns the exact length of the output {@link #render(Map)} would produce for the given values.
+   *
+   * @param values The replacement map.
+   * @return The length of the rendered template.
+   */
+  public int renderedLength(Map<?, ?> values) {
+    return renderedLength(resolve(values));
+  }
+
+  /**
+   * Renders the template.
+   *
+   * @param values The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements.
+   * @return The rendered template.
+   */
+  public String render(Map<?, ?> values) {
+    final String[] resolved = resolve(values);
+    final char[] out = new char[renderedLength(resolved)];
+
+    int literalPos = 0;
+    int outPos = 0;
+    for (int i = 0; i < refs.length; i++) {
+      final int spanLen = spanEnds[i] - literalPos;
+      System.arraycopy(literals, literalPos, out, outPos, spanLen);
+      literalPos = spanEnds[i];
+      outPos += spanLen;
+
+      final String value = resolved[refs[i]];
+      value.getChars(0, value.length(), out, outPos);
+      outPos += value.length();
+    }
+    System.arraycopy(literals, literalPos, out, outPos, literals.length - literalPos);
+
+    return new String(out);
+  }
+
+  /**
+   * Renders the template directly to a writer.
+   *
+   * @param values The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements.
+   * @param out The writer to write to. It is neither flushed nor closed.
+   * @throws IOException If writing fails.
+   */
+  public void renderTo(Map<?, ?> values, Writer out) throws IOException {
+    final String[] resolved = resolve(values);
+
+    int literalPos = 0;
+    for (int i = 0; i < refs.length; i++) {
+      out.write(literals, literalPos, spanEnds[i] - literalPos);
+      literalPos = spanEnds[i];
+      out.write(resolved[refs[i]]);
+    }
+    out.write(literals, literalPos, literals.length - literalPos);
+  }
+
+  /**
+   * @return The number of key references in the template.
+   */
+  public int referenceCount() {
+    return refs.length;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CompiledTemplate[literal chars: %d, references: %d, distinct keys: %d]", literals.length,
+        refs.length, keys.length);
+  }
+
+  private String[] resolve(Map<?, ?> values) {
+    final String[] resolved = new String[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      final Object value = values.get(keys[i]);
+      if (value instanceof StreamedValue)
+        throw new IllegalArgumentException("Streamed values can't be rendered into a template: " + keys[i]);
+      resolved[i] = (value != null) ? value.toString() : keys[i];
+    }
+
+    return resolved;
+  }
+
+  private int renderedLength(String[] resolved) {
+    long len = literals.length;
+    for (int ref : refs)
+      len += resolved[ref].length();
+
+    if (len > Integer.MAX_VALUE)
+      throw new IllegalStateException("Rendered template would exceed the maximum array size: " + len);
+
+    return (int) len;
+  }
+}
@@ -0,0 +1,186 @@
+package achwie.javaio;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * <p>
+ * Finds keys that all start with the same prefix and end with the same suffix, like {@code ${name}}, and contain the
+ * suffix nowhere else behind the prefix. At a position where the prefix starts, the first following occurrence of the
+ * suffix is the only possible end of a key, so a single lookup in a hash table (comparing the chars in place) tells
+ * whether there is a key. The cost doesn't depend on the number of keys.
+ * </p>
+ */
+class DelimitedKeyMatcher implements KeyMatcher {
+  private final String prefix;
+  private final String suffix;
+  private final String[] keys;
+  // Open addressing: key id + 1 per slot, 0 for empty slots
+  private final int[] table;
+  private final int mask;
+  private final int minKeyLength;
+  private final int maxKeyLength;
+  // The keys in their natural order, for isKeyPrefix()
+  private final String[] sortedKeys;
+
+  /**
+   * @throws IllegalArgumentException If the delimiters are empty or a key isn't delimited by them.
+   */
+  public DelimitedKeyMatcher(Collection<String> keys, String prefix, String suffix) {
+    if (prefix.isEmpty() || suffix.isEmpty())
+      throw new IllegalArgumentException("Delimiters must not be empty");
+
+    this.prefix = prefix;
+    this.suffix = suffix;
+    this.keys = keys.toArray(new String[keys.size()]);
+
+    int size = 4;
+    while (size < this.keys.length * 2)
+      size *= 2;
+    this.table = new int[size];
+    this.mask = size - 1;
+
+    int minLen = Integer.MAX_VALUE;
+    int maxLen = 0;
+    for (int id = 0; id < this.keys.length; id++) {
+      final String key = this.keys[id];
+      if (!isDelimited(key, prefix, suffix))
+        throw new IllegalArgumentException(String.format("Key <%s> is not delimited by <%s> and <%s>", key, prefix,
+            suffix));
+
+      int slot = key.hashCode() & mask;
+      while (table[slot] != 0) {
+        if (this.keys[table[slot] - 1].equals(key))
+          throw new IllegalArgumentException("Duplicate key: " + key);
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = id + 1;
+
+      minLen = Math.min(minLen, key.length());
+      maxLen = Math.max(maxLen, key.length());
+    }
+    this.minKeyLength = minLen;
+    this.maxKeyLength = maxLen;
+
+    this.sortedKeys = Arrays.copyOf(this.keys, this.keys.length);
+    Arrays.sort(sortedKeys);
+  }
+
+  /**
+   * Tells whether the key starts with the prefix and contains the suffix behind the prefix only at its end.
+   */
+  static boolean isDelimited(String key, String prefix, String suffix) {
+    return key.length() >= prefix.length() + suffix.length() && key.startsWith(prefix)
+        && key.indexOf(suffix, prefix.length()) == key.length() - suffix.length();
+  }
+
+  @Override
+  public int match(CharSequence str, int offset) {
+    final int end = Math.min(str.length(), offset + maxKeyLength);
+    if (end - offset < minKeyLength || !regionMatches(str, offset, prefix))
+      return -1;
+
+    // The first suffix behind the prefix ends the only key that could match
+    final int suffixStart = indexOfSuffix(str, offset + prefix.length(), end);
+    if (suffixStart == -1)
+      return -1;
+
+    final int keyEnd = suffixStart + suffix.length();
+    int hash = 0;
+    for (int i = offset; i < keyEnd; i++)
+      hash = 31 * hash + str.charAt(i);
+
+    for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+      final String key = keys[table[slot] - 1];
+      if (key.length() == keyEnd - offset && key.hashCode() == hash && regionMatches(str, offset, key))
+        return table[slot] - 1;
+    }
+
+    return -1;
+  }
+
+  @Override
+  public boolean isKeyPrefix(CharSequence str, int offset) {
+    final int len = str.length() - offset;
+    if (len >= maxKeyLength)
+      return false;
+
+    // A complete candidate can't be continued by a longer key
+    if (len >= prefix.length() + suffix.length() && indexOfSuffix(str, offset + prefix.length(), str.length()) != -1)
+      return false;
+
+    // Binary search for the first key that is greater than the text, the keys starting with the text follow it
+    int low = 0;
+    int high = sortedKeys.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (compare(sortedKeys[mid], str, offset) <= 0)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+
+    return low < sortedKeys.length && sortedKeys[low].length() > len
+        && regionMatches(str, offset, sortedKeys[low], len);
+  }
+
+  @Override
+  public String key(int id) {
+    return keys[id];
+  }
+
+  @Override
+  public int keyLength(int id) {
+    return keys[id].length();
+  }
+
+  @Override
+  public int keyCount() {
+    return keys.length;
+  }
+
+  @Override
+  public int maxKeyLength() {
+    return maxKeyLength;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("DelimitedKeyMatcher[prefix: <%s>, suffix: <%s>, keys: %d]", prefix, suffix, keys.length);
+  }
+
+  private int indexOfSuffix(CharSequence str, int from, int end) {
+    final char first = suffix.charAt(0);
+    for (int i = from; i + suffix.length() <= end; i++)
+      if (str.charAt(i) == first && regionMatches(str, i, suffix))
+        return i;
+
+    return -1;
+  }
+
+  private static boolean regionMatches(CharSequence str, int offset, String value) {
+    return offset + value.length() <= str.length() && regionMatches(str, offset, value, value.length());
+  }
+
+  private static boolean regionMatches(CharSequence str, int offset, String value, int len) {
+    for (int i = 0; i < len; i++)
+      if (str.charAt(offset + i) != value.charAt(i))
+        return false;
+
+    return true;
+  }
+
+  /**
+   * Compares the key with the rest of the text starting at {@code offset}, like {@link String#compareTo(String)}.
+   */
+  private static int compare(String key, CharSequence str, int offset) {
+    final int len = Math.min(key.length(), str.length() - offset);
+    for (int i = 0; i < len; i++) {
+      final int diff = key.charAt(i) - str.charAt(offset + i);
+      if (diff != 0)
+        return diff;
+    }
+
+    return key.length() - (str.length() - offset);
+  }
+}
@@ -0,0 +1,370 @@
+package achwie.javaio;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Reports what a {@link PropertiesFilterReader} does as Java Flight Recorder events, so it shows up in recordings next
+ * to GC and I/O:
+ * </p>
+ * <ul>
+ * <li>{@code achwie.javaio.SourceRefill}: the reads from the source reader during a {@code read()} call (or up to
+ * 64K chars of {@code transferTo()}) with their number and total time (threshold 1 ms),</li>
+ * <li>{@code achwie.javaio.SlowRead}: a {@code read()} call (threshold 10 ms),</li>
+ * <li>{@code achwie.javaio.LargeMatch}: a key replaced with a streamed value or one that is at least as long as the
+ * system property {@value #LARGE_MATCH_PROPERTY} tells (1024 chars by default),</li>
+ * <li>{@code achwie.javaio.FilterReader}: the lifetime of a reader with the number of chars read and written while it
+ * was recorded.</li>
+ * </ul>
+ * <p>
+ * The event types are defined through reflection, as the events API only exists from Java 11 (and 8u262) on. They are
+ * only defined once the flight recorder has been initialized. Whenever a recording starts or stops, the
+ * {@link #generation()} changes and readers decide again which events they report; without a recording, they hold no
+ * {@code FilterEvents} at all. Events under their threshold are neither filled nor committed, and single reads from
+ * the source are only timed, so they don't cost an event each.
+ * </p>
+ */
+final class FilterEvents {
+  static final String LARGE_MATCH_PROPERTY = "achwie.javaio.jfr.largeMatchChars";
+  private static final int LARGE_MATCH_CHARS = Integer.getInteger(LARGE_MATCH_PROPERTY, 1024);
+  private static final int MAX_REFILL_GROUP_CHARS = 64 * 1024;
+  // FlightRecorder.isInitialized() or null, if there is no flight recorder
+  private static final Method IS_INITIALIZED = lookUpIsInitialized();
+  private static volatile EventTypes types;
+  private static volatile boolean unavailable;
+  // Only a change matters, so a lost increment of concurrent notifications doesn't
+  private static volatile int generation;
+
+  static {
+    if (IS_INITIALIZED != null)
+      listenToRecordings();
+  }
+
+  private final EventTypes t;
+  private boolean refills;
+  private boolean slowReads;
+  private boolean largeMatches;
+  // The lifecycle event, which began when the reader was first recorded, or null
+  private Object lifecycle;
+  private long charsRead;
+  private long charsWritten;
+  private long replacements;
+  private long refillCount;
+  // The refill event of the current group, which began with its first read from the source, or null
+  private Object refillEvent;
+  private int groupRefills;
+  private long groupChars;
+  private long groupNanos;
+  private long refillStart;
+
+  private FilterEvents(EventTypes t) {
+    this.t = t;
+  }
+
+  /**
+   * @return A number that changes whenever a recording starts or stops.
+   */
+  static int generation() {
+    return generation;
+  }
+
+  /**
+   * @return The events of a new reader, or {@code null} if none of them is recorded.
+   */
+  static FilterEvents open() {
+    return refresh(null);
+  }
+
+  /**
+   * Decides again which events are reported, after the {@link #generation()} has changed. The counts are kept.
+   *
+   * @param events The events of the reader so far, or {@code null}.
+   * @return The events of the reader, or {@code null} if none of them is recorded.
+   */
+  static FilterEvents refresh(FilterEvents events) {
+    final EventTypes t = types();
+    if (t == null)
+      return null;
+
+    final FilterEvents e = (events != null) ? events : new FilterEvents(t);
+    e.refills = t.isEnabled(t.refill);
+    e.slowReads = t.isEnabled(t.read);
+    e.largeMatches = t.isEnabled(t.match);
+    if (e.lifecycle == null && t.isEnabled(t.lifecycle))
+      e.lifecycle = e.begin(t.lifecycle);
+
+    return (e.refills || e.slowReads || e.largeMatches || e.lifecycle != null) ? e : null;
+  }
+
+  /**
+   * Starts timing a read from the source. The first one of a group begins the refill event.
+   */
+  void beginRefill() {
+    if (!refills)
+      return;
+
+    if (refillEvent == null)
+      refillEvent = begin(t.refill);
+    refillStart = System.nanoTime();
+  }
+
+  void endRefill(int chars) {
+    if (chars > 0) {
+      charsRead += chars;
+      refillCount++;
+    }
+    if (refillEvent == null || chars == 0)
+      return;
+
+    groupNanos += System.nanoTime() - refillStart;
+    groupRefills++;
+    if (chars > 0)
+      groupChars += chars;
+    if (groupChars >= MAX_REFILL_GROUP_CHARS)
+      endRefills();
+  }
+
+  /**
+   * Ends the current group of reads from the source, if there is one.
+   */
+  void endRefills() {
+    final Object event = refillEvent;
+    if (event == null)
+      return;
+
+    refillEvent = null;
+    if (groupRefills > 0 && end(event))
+      commit(event, groupRefills, groupChars, groupNanos);
+    groupRefills = 0;
+    groupChars = 0;
+    groupNanos = 0;
+  }
+
+  /**
+   * @return The event of a {@code read()} call, which has begun, or {@code null} if it isn't recorded.
+   */
+  Object beginRead() {
+    return slowReads ? begin(t.read) : null;
+  }
+
+  void endRead(Object event, int requested, int chars) {
+    endRefills();
+    written(chars);
+    if (event != null && end(event))
+      commit(event, requested, chars);
+  }
+
+  void written(long chars) {
+    if (chars > 0)
+      charsWritten += chars;
+  }
+
+  /**
+   * @param valueLength The length of the value or {@code -1}, if it is streamed.
+   */
+  void replaced(String key, int valueLength) {
+    replacements++;
+    if (largeMatches && (valueLength == -1 || valueLength >= LARGE_MATCH_CHARS)) {
+      final Object event = begin(t.match);
+      if (end(event))
+        commit(event, key, key.length(), valueLength);
+    }
+  }
+
+  void close() {
+    endRefills();
+    final Object event = lifecycle;
+    lifecycle = null;
+    if (event != null && end(event))
+      commit(event, charsRead, charsWritten, replacements, refillCount);
+  }
+
+  private Object begin(Object factory) {
+    final Object event = t.newEvent(factory);
+    t.invoke(t.begin, event);
+
+    return event;
+  }
+
+  /**
+   * Ends the event.
+   *
+   * @return Whether it should be committed, i.e. it is still enabled and exceeds its threshold.
+   */
+  private boolean end(Object event) {
+    t.invoke(t.end, event);
+    return (Boolean) t.invoke(t.shouldCommit, event);
+  }
+
+  private void commit(Object event, Object... values) {
+    for (int i = 0; i < values.length; i++)
+      t.invoke(t.set, event, i, values[i]);
+    t.invoke(t.commit, event);
+  }
+
+  private static EventTypes types() {
+    if (IS_INITIALIZED == null || unavailable)
+      return null;
+
+    EventTypes t = types;
+    if (t != null)
+      return t;
+
+    try {
+      // Defining the types before would start parts of the flight recorder, even if there is never a recording
+      if (!(Boolean) IS_INITIALIZED.invoke(null))
+        return null;
+
+      synchronized (FilterEvents.class) {
+        if (types == null)
+          types = new EventTypes();
+        return types;
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      unavailable = true;
+      return null;
+    }
+  }
+
+  private static Method lookUpIsInitialized() {
+    try {
+      return Class.forName("jdk.jfr.FlightRecorder").getMethod("isInitialized");
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Changes the generation whenever a recording changes its state. Adding the listener doesn't initialize the flight
+   * recorder.
+   */
+  private static void listenToRecordings() {
+    try {
+      final Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener");
+      final Object listener = Proxy.newProxyInstance(FilterEvents.class.getClassLoader(),
+          new Class<?>[] { listenerClass }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+              if (method.getName().equals("equals"))
+                return proxy == args[0];
+              else if (method.getName().equals("hashCode"))
+                return System.identityHashCode(proxy);
+              else if (method.getName().equals("toString"))
+                return "FilterEvents.RecordingListener";
+
+              generation++;
+              return null;
+            }
+          });
+      Class.forName("jdk.jfr.FlightRecorder").getMethod("addListener", listenerClass).invoke(null, listener);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      unavailable = true;
+    }
+  }
+
+  /**
+   * The event types and the methods of {@code jdk.jfr}.
+   */
+  private static class EventTypes {
+    private final Constructor<?> annotation;
+    private final Constructor<?> field;
+    private final Method newEvent;
+    private final Method begin;
+    private final Method end;
+    private final Method shouldCommit;
+    private final Method commit;
+    private final Method isEnabled;
+    private final Method set;
+    private final Method getEventType;
+    private final Object refill;
+    private final Object read;
+    private final Object match;
+    private final Object lifecycle;
+
+    public EventTypes() throws ReflectiveOperationException {
+      annotation = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+      field = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+      final Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+      newEvent = factoryClass.getMethod("newEvent");
+      final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+      begin = eventClass.getMethod("begin");
+      end = eventClass.getMethod("end");
+      shouldCommit = eventClass.getMethod("shouldCommit");
+      commit = eventClass.getMethod("commit");
+      isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+      set = eventClass.getMethod("set", int.class, Object.class);
+      getEventType = factoryClass.getMethod("getEventType");
+      final Method create = factoryClass.getMethod("create", List.class, List.class);
+
+      final List<Object> refillFields = fields(int.class, "refills", "Refills", long.class, "chars", "Chars");
+      refillFields.add(field.newInstance(long.class, "time", Arrays.asList(annotation("Label", "Time"),
+          annotation("Timespan", "NANOSECONDS"))));
+      refill = create.invoke(null, annotations("SourceRefill", "Source Refill",
+          "The reads from the source reader during a read() call", "1 ms", false), refillFields);
+      read = create.invoke(null, annotations("SlowRead", "Slow Read", "A read() call", "10 ms", true),
+          fields(int.class, "requested", "Requested Chars", int.class, "chars", "Chars"));
+      match = create.invoke(null, annotations("LargeMatch", "Large Match",
+          "A key replaced with a large or streamed (-1) value", null, true),
+          fields(String.class, "key", "Key", int.class, "keyLength", "Key Length", int.class, "valueLength",
+              "Value Length"));
+      lifecycle = create.invoke(null, annotations("FilterReader", "Filter Reader", "The lifetime of a reader", null,
+          false), fields(long.class, "charsRead", "Chars Read", long.class, "charsWritten", "Chars Written",
+          long.class, "replacements", "Replacements", long.class, "refills", "Refills"));
+    }
+
+    public Object newEvent(Object factory) {
+      return invoke(newEvent, factory);
+    }
+
+    public boolean isEnabled(Object factory) {
+      return (Boolean) invoke(isEnabled, invoke(getEventType, factory));
+    }
+
+    public Object invoke(Method method, Object target, Object... args) {
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw new IllegalStateException("Failed to record event", e.getCause());
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Failed to record event", e);
+      }
+    }
+
+    private List<Object> annotations(String name, String label, String description, String threshold,
+        boolean stackTrace) throws ReflectiveOperationException {
+      final List<Object> annotations = new ArrayList<>();
+      annotations.add(annotation("Name", "achwie.javaio." + name));
+      annotations.add(annotation("Label", label));
+      annotations.add(annotation("Description", description));
+      annotations.add(annotation("Category", new String[] { "Java I/O", "PropertiesFilterReader" }));
+      annotations.add(annotation("StackTrace", stackTrace));
+      if (threshold != null)
+        annotations.add(annotation("Threshold", threshold));
+
+      return annotations;
+    }
+
+    /**
+     * @param typesNamesAndLabels The type, name and label of every field.
+     */
+    private List<Object> fields(Object... typesNamesAndLabels) throws ReflectiveOperationException {
+      final List<Object> fields = new ArrayList<>();
+      for (int i = 0; i < typesNamesAndLabels.length; i += 3)
+        fields.add(field.newInstance(typesNamesAndLabels[i], typesNamesAndLabels[i + 1],
+            Arrays.asList(annotation("Label", typesNamesAndLabels[i + 2]))));
+
+      return fields;
+    }
+
+    private Object annotation(String type, Object value) throws ReflectiveOperationException {
+      return annotation.newInstance(Class.forName("jdk.jfr." + type), value);
+    }
+  }
+}
@@ -0,0 +1,317 @@
+package achwie.javaio;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Replaces all keys in a text that is already in memory. Unlike calling {@link String#replace(CharSequence,
+ * CharSequence)} once per key, the text is scanned only once: the occurrences are collected first, then the exact
+ * length of the result is known and it is built in a single array by copying the unmatched spans and the values in
+ * bulk.
+ * </p>
+ * <p>
+ * Keys are matched exactly like the {@link PropertiesFilterReader} does. A key without a value is left in the output
+ * as it is. A {@link StreamedValue} is measured first and then read straight into the result, so it isn't held in
+ * memory besides the result. Large texts can be scanned in parallel by setting an
+ * {@link #setExecutor(ExecutorService) executor}: the text is split into chunks that are scanned independently, and
+ * where a key crosses the end of a chunk, the scan of the next chunk is corrected until it continues at a position the
+ * sequential scan would have reached as well.
+ * </p>
+ *
+ * <pre>
+ * final InMemoryReplacer replacer = new InMemoryReplacer(props);
+ * replacer.setExecutor(executor);
+ * final String result = replacer.replaceAll(text);
+ * </pre>
+ */
+public class InMemoryReplacer {
+  private final Replacements replacements;
+  private ExecutorService executor;
+  private int chunkSize = 1024 * 1024;
+
+  /**
+   * @param replacements The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements.
+   */
+  public InMemoryReplacer(Map<Object, Object> replacements) {
+    this(MapReplacements.of(replacements));
+  }
+
+  /**
+   * @param replacements The keys to search for and their replacements.
+   */
+  public InMemoryReplacer(Replacements replacements) {
+    this.replacements = replacements;
+  }
+
+  /**
+   * Replaces all keys in the text sequentially.
+   *
+   * @param text The text.
+   * @param replacements The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements.
+   * @return The text with all keys replaced.
+   */
+  public static String replaceAll(CharSequence text, Map<Object, Object> replacements) {
+    return new InMemoryReplacer(replacements).replaceAll(text);
+  }
+
+  /**
+   * @param executor Scans the chunks of large texts in parallel, or {@code null} to always scan sequentially (which is
+   *          the default).
+   */
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @param chunkSize The number of chars scanned as one task. Only texts of at least two chunks are scanned in
+   *          parallel.
+   */
+  public void setChunkSize(int chunkSize) {
+    if (chunkSize < 1)
+      throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Replaces all keys in the text.
+   *
+   * @param text The text.
+   * @return The text with all keys replaced.
+   */
+  public String replaceAll(CharSequence text) {
+    final Occurrences occurrences = scan(text);
+
+    // Streamed values are only measured here and read straight into the result later
+    final Object[] values = new Object[occurrences.count];
+    final long[] lengths = new long[occurrences.count];
+    final Map<Object, Long> streamedLengths = new IdentityHashMap<>();
+    long len = text.length();
+    for (int i = 0; i < occurrences.count; i++) {
+      final Object value = replacements.valueOf(occurrences.keyIds[i]);
+      if (value instanceof StreamedValue) {
+        values[i] = value;
+        lengths[i] = length((StreamedValue) value, streamedLengths);
+      } else if (value != null) {
+        values[i] = value.toString();
+        lengths[i] = ((String) values[i]).length();
+      } else {
+        continue;
+      }
+      len += lengths[i] - (occurrences.ends[i] - occurrences.starts[i]);
+    }
+
+    if (len > Integer.MAX_VALUE)
+      throw new IllegalStateException("Result would exceed the maximum array size: " + len);
+
+    final char[] out = new char[(int) len];
+    int textPos = 0;
+    int outPos = 0;
+    for (int i = 0; i < occurrences.count; i++) {
+      if (values[i] == null)
+        continue;
+
+      final int start = occurrences.starts[i];
+      getChars(text, textPos, start, out, outPos);
+      outPos += start - textPos;
+      if (values[i] instanceof String)
+        ((String) values[i]).getChars(0, (int) lengths[i], out, outPos);
+      else
+        read((StreamedValue) values[i], out, outPos, (int) lengths[i]);
+      outPos += lengths[i];
+      textPos = occurrences.ends[i];
+    }
+    getChars(text, textPos, text.length(), out, outPos);
+
+    return new String(out);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("InMemoryReplacer[matcher: %s, chunk size: %d, parallel: %s]", replacements.matcher(),
+        chunkSize, executor != null);
+  }
+
+  private Occurrences scan(final CharSequence text) {
+    final KeyMatcher matcher = replacements.matcher();
+    if (executor == null || text.length() < 2L * chunkSize)
+      return scan(matcher, text, 0, text.length());
+
+    final List<Future<Occurrences>> futures = new ArrayList<>();
+    for (int start = 0; start < text.length(); start += chunkSize) {
+      final int from = start;
+      final int to = (int) Math.min(text.length(), (long) start + chunkSize);
+      futures.add(executor.submit(new Callable<Occurrences>() {
+        @Override
+        public Occurrences call() {
+          return scan(matcher, text, from, to);
+        }
+      }));
+    }
+
+    try {
+      final Occurrences result = futures.get(0).get();
+      for (int i = 1; i < futures.size(); i++)
+        resync(matcher, text, result, futures.get(i).get());
+
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while scanning", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      if (e.getCause() instanceof Error)
+        throw (Error) e.getCause();
+      throw new IllegalStateException("Scanning failed", e.getCause());
+    } finally {
+      for (Future<Occurrences> future : futures)
+        future.cancel(true);
+    }
+  }
+
+  /**
+   * Scans the text for keys starting in {@code [from, to)}. The last key may end behind {@code to}.
+   */
+  private static Occurrences scan(KeyMatcher matcher, CharSequence text, int from, int to) {
+    final Occurrences occurrences = new Occurrences(from);
+    while (occurrences.end < to)
+      step(matcher, text, occurrences);
+
+    return occurrences;
+  }
+
+  /**
+   * Looks for a key at the end of the scanned range and moves the end behind it or by a single char.
+   */
+  private static void step(KeyMatcher matcher, CharSequence text, Occurrences occurrences) {
+    final int pos = occurrences.end;
+    final int keyId = matcher.match(text, pos);
+    final int keyLength = (keyId != -1) ? matcher.keyLength(keyId) : 0;
+    if (keyLength > 0)
+      occurrences.add(pos, pos + keyLength, keyId);
+    else
+      occurrences.end = pos + 1;
+  }
+
+  /**
+   * Appends the occurrences of the next chunk to the result. The chunk's scan started at its first char, but the
+   * sequential scan may continue at a later position (if a key crossed into the chunk), which the chunk's scan may have
+   * skipped because it was inside a key it found. Then the text is scanned sequentially until it reaches a position
+   * that the chunk's scan has reached as well, from where on both find the same keys.
+   */
+  private static void resync(KeyMatcher matcher, CharSequence text, Occurrences result, Occurrences next) {
+    int i = 0;
+    while (true) {
+      while (i < next.count && next.ends[i] <= result.end)
+        i++;
+
+      if (i == next.count || next.starts[i] >= result.end)
+        break;
+
+      step(matcher, text, result);
+    }
+
+    result.addAll(next, i);
+    result.end = Math.max(result.end, next.end);
+  }
+
+  private static long length(StreamedValue value, Map<Object, Long> lengths) {
+    Long length = lengths.get(value);
+    if (length == null) {
+      try {
+        length = value.length();
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not read streamed value: " + value, e);
+      }
+      lengths.put(value, length);
+    }
+
+    return length;
+  }
+
+  private static void read(StreamedValue value, char[] dst, int off, int len) {
+    try (Reader r = value.open()) {
+      int n = 0;
+      int charsRead;
+      while (n < len && (charsRead = r.read(dst, off + n, len - n)) != -1)
+        n += charsRead;
+
+      if (n < len || r.read() != -1)
+        throw new IllegalStateException("Streamed value changed while replacing: " + value);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read streamed value: " + value, e);
+    }
+  }
+
+  private static void getChars(CharSequence text, int start, int end, char[] dst, int dstPos) {
+    if (text instanceof String) {
+      ((String) text).getChars(start, end, dst, dstPos);
+    } else if (text instanceof StringBuilder) {
+      ((StringBuilder) text).getChars(start, end, dst, dstPos);
+    } else if (text instanceof CharBuffer) {
+      final CharBuffer buffer = ((CharBuffer) text).duplicate();
+      buffer.position(buffer.position() + start);
+      buffer.get(dst, dstPos, end - start);
+    } else {
+      for (int i = start; i < end; i++)
+        dst[dstPos++] = text.charAt(i);
+    }
+  }
+
+  /**
+   * The keys found in a range of the text, in the order of their positions.
+   */
+  private static class Occurrences {
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int[] keyIds = new int[16];
+    private int count;
+    // Where the scan continues
+    private int end;
+
+    public Occurrences(int start) {
+      this.end = start;
+    }
+
+    public void add(int start, int end, int keyId) {
+      ensureCapacity(count + 1);
+      starts[count] = start;
+      ends[count] = end;
+      keyIds[count++] = keyId;
+      this.end = end;
+    }
+
+    public void addAll(Occurrences other, int from) {
+      final int n = other.count - from;
+      ensureCapacity(count + n);
+      System.arraycopy(other.starts, from, starts, count, n);
+      System.arraycopy(other.ends, from, ends, count, n);
+      System.arraycopy(other.keyIds, from, keyIds, count, n);
+      count += n;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity <= starts.length)
+        return;
+
+      final int newLength = Math.max(capacity, starts.length * 2);
+      starts = Arrays.copyOf(starts, newLength);
+      ends = Arrays.copyOf(ends, newLength);
+      keyIds = Arrays.copyOf(keyIds, newLength);
+    }
+  }
+}
@@ -0,0 +1,234 @@
+package achwie.javaio;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * Describes the shape of a set of keys (count, lengths, common prefix and suffix, alphabet) and picks the
+ * {@link MatchStrategy} that finds them fastest:
+ * </p>
+ * <ul>
+ * <li>a single key is compared directly ({@link MatchStrategy#SINGLE_KEY}),</li>
+ * <li>many keys (at least {@value #DELIMITED_MIN_KEYS}) enclosed in common delimiters, like {@code ${name}}, are
+ * looked up in a hash table ({@link MatchStrategy#DELIMITED}), whose cost grows slower with the number of keys than the
+ * one of a search tree that doesn't fit into the CPU caches any more,</li>
+ * <li>all other keys are found with a {@link StringListSearchTree} ({@link MatchStrategy#SEARCH_TREE}).</li>
+ * </ul>
+ *
+ * <pre>
+ * final KeyAnalysis analysis = KeyAnalysis.of(keys);
+ * System.out.println(analysis); // Tells the chosen strategy and why
+ * final KeyMatcher matcher = analysis.createMatcher(MatchStrategy.AUTO);
+ * </pre>
+ */
+public class KeyAnalysis {
+  /**
+   * Below this number of keys, the search tree is at least as fast as the hash lookup of delimited keys.
+   */
+  public static final int DELIMITED_MIN_KEYS = 50000;
+  private final List<String> keys;
+  private final int minKeyLength;
+  private final int maxKeyLength;
+  private final double meanKeyLength;
+  private final String commonPrefix;
+  private final String commonSuffix;
+  private final int alphabetSize;
+  // Delimiters that work for the delimited strategy or null
+  private final String delimiterPrefix;
+  private final String delimiterSuffix;
+  private final MatchStrategy recommendedStrategy;
+  private final String reason;
+
+  private KeyAnalysis(List<String> keys) {
+    this.keys = keys;
+
+    int minLen = keys.isEmpty() ? 0 : Integer.MAX_VALUE;
+    int maxLen = 0;
+    long totalLen = 0;
+    String prefix = keys.isEmpty() ? "" : keys.get(0);
+    String suffix = prefix;
+    final BitSet alphabet = new BitSet();
+    for (String key : keys) {
+      minLen = Math.min(minLen, key.length());
+      maxLen = Math.max(maxLen, key.length());
+      totalLen += key.length();
+      prefix = prefix.substring(0, commonPrefixLength(prefix, key));
+      suffix = suffix.substring(suffix.length() - commonSuffixLength(suffix, key));
+      for (int i = 0; i < key.length(); i++)
+        alphabet.set(key.charAt(i));
+    }
+
+    this.minKeyLength = minLen;
+    this.maxKeyLength = maxLen;
+    this.meanKeyLength = keys.isEmpty() ? 0 : (double) totalLen / keys.size();
+    this.commonPrefix = prefix;
+    this.commonSuffix = suffix;
+    this.alphabetSize = alphabet.cardinality();
+
+    // The whole common suffix makes the shortest candidates, but a single char may be the only one that works
+    String delimPrefix = null;
+    String delimSuffix = null;
+    if (keys.size() > 1 && !prefix.isEmpty() && !suffix.isEmpty()) {
+      if (allDelimited(prefix, suffix))
+        delimSuffix = suffix;
+      else if (allDelimited(prefix, suffix.substring(suffix.length() - 1)))
+        delimSuffix = suffix.substring(suffix.length() - 1);
+
+      if (delimSuffix != null)
+        delimPrefix = prefix;
+    }
+    this.delimiterPrefix = delimPrefix;
+    this.delimiterSuffix = delimSuffix;
+
+    if (keys.size() == 1) {
+      recommendedStrategy = MatchStrategy.SINGLE_KEY;
+      reason = "there is a single key, which is compared directly";
+    } else if (delimiterPrefix != null && keys.size() >= DELIMITED_MIN_KEYS) {
+      recommendedStrategy = MatchStrategy.DELIMITED;
+      reason = String.format("all keys start with <%s> and end with the first <%s> behind it, so a single hash "
+          + "lookup per candidate finds them", delimiterPrefix, delimiterSuffix);
+    } else {
+      recommendedStrategy = MatchStrategy.SEARCH_TREE;
+      if (keys.isEmpty())
+        reason = "there are no keys";
+      else if (delimiterPrefix != null)
+        reason = String.format("%d keys are too few for hashing to be faster than the search tree", keys.size());
+      else
+        reason = "the keys are not enclosed in common delimiters";
+    }
+  }
+
+  /**
+   * Analyzes a set of keys. Empty and duplicate keys are ignored.
+   *
+   * @param keys The keys.
+   * @return The analysis.
+   */
+  public static KeyAnalysis of(Collection<?> keys) {
+    final List<String> sortedKeys = new ArrayList<>(keys.size());
+    for (Object key : keys)
+      if (!key.toString().isEmpty())
+        sortedKeys.add(key.toString());
+    Collections.sort(sortedKeys);
+
+    // Remove duplicates
+    int unique = 0;
+    for (int i = 0; i < sortedKeys.size(); i++)
+      if (unique == 0 || !sortedKeys.get(i).equals(sortedKeys.get(unique - 1)))
+        sortedKeys.set(unique++, sortedKeys.get(i));
+
+    return new KeyAnalysis(new ArrayList<>(sortedKeys.subList(0, unique)));
+  }
+
+  /**
+   * Creates a matcher for the keys.
+   *
+   * @param strategy The strategy to use, or {@link MatchStrategy#AUTO} for the recommended one.
+   * @return The matcher.
+   * @throws IllegalArgumentException If the strategy doesn't work for the keys.
+   */
+  public KeyMatcher createMatcher(MatchStrategy strategy) {
+    switch (strategy) {
+    case AUTO:
+      return createMatcher(recommendedStrategy);
+    case SINGLE_KEY:
+      if (keys.size() != 1)
+        throw new IllegalArgumentException("Single key strategy doesn't work for " + keys.size() + " keys");
+      return new SingleKeyMatcher(keys.get(0));
+    case DELIMITED:
+      if (delimiterPrefix == null)
+        throw new IllegalArgumentException("Delimited strategy doesn't work for keys that are not enclosed in common "
+            + "delimiters");
+      return new DelimitedKeyMatcher(keys, delimiterPrefix, delimiterSuffix);
+    case SEARCH_TREE:
+      return new StringListSearchTree(keys);
+    default:
+      throw new IllegalArgumentException("Unknown strategy: " + strategy);
+    }
+  }
+
+  public int keyCount() {
+    return keys.size();
+  }
+
+  public int minKeyLength() {
+    return minKeyLength;
+  }
+
+  public int maxKeyLength() {
+    return maxKeyLength;
+  }
+
+  public double meanKeyLength() {
+    return meanKeyLength;
+  }
+
+  /**
+   * @return The longest string all keys start with.
+   */
+  public String commonPrefix() {
+    return commonPrefix;
+  }
+
+  /**
+   * @return The longest string all keys end with.
+   */
+  public String commonSuffix() {
+    return commonSuffix;
+  }
+
+  /**
+   * @return The number of distinct chars in the keys.
+   */
+  public int alphabetSize() {
+    return alphabetSize;
+  }
+
+  public MatchStrategy recommendedStrategy() {
+    return recommendedStrategy;
+  }
+
+  /**
+   * @return Why the {@link #recommendedStrategy()} was chosen.
+   */
+  public String reason() {
+    return reason;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("KeyAnalysis[keys: %d, lengths: %d-%d (mean %.1f), prefix: <%s>, suffix: <%s>, alphabet: "
+        + "%d chars, strategy: %s, because %s]", keys.size(), minKeyLength, maxKeyLength, meanKeyLength, commonPrefix,
+        commonSuffix, alphabetSize, recommendedStrategy, reason);
+  }
+
+  private boolean allDelimited(String prefix, String suffix) {
+    for (String key : keys)
+      if (!DelimitedKeyMatcher.isDelimited(key, prefix, suffix))
+        return false;
+
+    return true;
+  }
+
+  private static int commonPrefixLength(String a, String b) {
+    final int len = Math.min(a.length(), b.length());
+    for (int i = 0; i < len; i++)
+      if (a.charAt(i) != b.charAt(i))
+        return i;
+
+    return len;
+  }
+
+  private static int commonSuffixLength(String a, String b) {
+    final int len = Math.min(a.length(), b.length());
+    for (int i = 1; i <= len; i++)
+      if (a.charAt(a.length() - i) != b.charAt(b.length() - i))
+        return i - 1;
+
+    return len;
+  }
+}
@@ -0,0 +1,49 @@
+package achwie.javaio;
+
+/**
+ * Finds the keys of a replacement map in a text. Every key is identified by an id in {@code [0, keyCount())}, which
+ * allows callers to keep per-key data in arrays instead of looking it up by the key string.
+ */
+public interface KeyMatcher {
+  /**
+   * Returns the id of the key that starts at position {@code offset} of {@code str}. If several keys start there, the
+   * longest one wins. Only keys that fit completely into {@code str} can match.
+   *
+   * @param str The text to search in.
+   * @param offset The position in {@code str} where the key must begin.
+   * @return The id of the matching key or {@code -1}, if no key starts at {@code offset}.
+   */
+  public int match(CharSequence str, int offset);
+
+  /**
+   * Tells whether the chars from position {@code offset} to the end of {@code str} are the beginning of a key that is
+   * longer than them, i.e. whether a longer match might start at {@code offset} once more chars are known.
+   *
+   * @param str The text to search in.
+   * @param offset The position in {@code str} where the key would begin.
+   * @return {@code true}, if at least one key starts with the rest of {@code str} and is longer than it.
+   */
+  public boolean isKeyPrefix(CharSequence str, int offset);
+
+  /**
+   * @param id The id of a key.
+   * @return The key with the given id.
+   */
+  public String key(int id);
+
+  /**
+   * @param id The id of a key.
+   * @return The length of the key with the given id.
+   */
+  public int keyLength(int id);
+
+  /**
+   * @return The number of keys, i.e. the upper bound (exclusive) of the key ids.
+   */
+  public int keyCount();
+
+  /**
+   * @return The length of the longest key, which is the look ahead a caller needs to find every key.
+   */
+  public int maxKeyLength();
+}
@@ -0,0 +1,248 @@
+package achwie.javaio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Finds the keys in a stream without producing any output, e.g. to check release artifacts for unresolved or forbidden
+ * placeholders. Keys are matched exactly like the {@link PropertiesFilterReader} does, and each occurrence is reported
+ * with its key id, char offset and line (counted by {@code '\n'}, starting at 1) to an {@link OccurrenceHandler} or
+ * collected into an {@link OccurrenceIndex}.
+ * </p>
+ *
+ * <pre>
+ * final KeyScanner scanner = new KeyScanner(forbiddenKeys);
+ * for (OccurrenceIndex index : scanner.scan(files, charset, executor))
+ *   for (int i = 0; i &lt; index.size(); i++)
+ *     System.out.printf(&quot;%s:%d: %s%n&quot;, index.file(), index.line(i), index.key(i));
+ * </pre>
+ */
+public class KeyScanner {
+  private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  private final KeyMatcher matcher;
+  private final int bufferSize;
+
+  /**
+   * Receives the occurrences of keys in the order they appear in the text.
+   */
+  public static interface OccurrenceHandler {
+    /**
+     * @param keyId The id of the key in the {@link KeyScanner#matcher() matcher}.
+     * @param offset The offset of the first char of the key in the text.
+     * @param line The line the key starts in.
+     */
+    public void occurrence(int keyId, long offset, int line);
+  }
+
+  /**
+   * @param keys The keys to look for.
+   */
+  public KeyScanner(Collection<?> keys) {
+    this(KeyAnalysis.of(keys).createMatcher(MatchStrategy.AUTO));
+  }
+
+  /**
+   * @param matcher The matcher that finds the keys.
+   */
+  public KeyScanner(KeyMatcher matcher) {
+    this(matcher, DEFAULT_BUFFER_SIZE);
+  }
+
+  KeyScanner(KeyMatcher matcher, int bufferSize) {
+    this.matcher = matcher;
+    this.bufferSize = Math.max(bufferSize, 2 * matcher.maxKeyLength());
+  }
+
+  public KeyMatcher matcher() {
+    return matcher;
+  }
+
+  /**
+   * Scans the text and reports all occurrences to the handler.
+   *
+   * @param in The text. It is read until the end but not closed.
+   * @param handler The handler to report to.
+   * @return The number of occurrences.
+   * @throws IOException If the text could not be read.
+   */
+  public long scan(Reader in, OccurrenceHandler handler) throws IOException {
+    final Window window = new Window(new char[bufferSize]);
+    // Without keys, the look ahead still has to hold the next char
+    final int lookAhead = Math.max(1, matcher.maxKeyLength());
+    long base = 0; // Offset of the first char in the window
+    int pos = 0;
+    int line = 1;
+    boolean eof = false;
+    long count = 0;
+
+    while (true) {
+      // Make sure the look ahead holds the longest key, unless the end of the text is near
+      if (!eof && window.length - pos < lookAhead) {
+        System.arraycopy(window.chars, pos, window.chars, 0, window.length - pos);
+        window.length -= pos;
+        base += pos;
+        pos = 0;
+        eof = fill(in, window);
+      }
+
+      if (pos == window.length)
+        return count;
+
+      final int keyId = matcher.match(window, pos);
+      final int keyLength = (keyId != -1) ? matcher.keyLength(keyId) : 0;
+      if (keyLength > 0) {
+        handler.occurrence(keyId, base + pos, line);
+        count++;
+        for (int i = pos; i < pos + keyLength; i++)
+          if (window.chars[i] == '\n')
+            line++;
+        pos += keyLength;
+      } else {
+        if (window.chars[pos] == '\n')
+          line++;
+        pos++;
+      }
+    }
+  }
+
+  /**
+   * Scans the text and collects all occurrences.
+   *
+   * @param in The text. It is read until the end but not closed.
+   * @return The occurrences.
+   * @throws IOException If the text could not be read.
+   */
+  public OccurrenceIndex scan(Reader in) throws IOException {
+    final OccurrenceIndex index = new OccurrenceIndex(matcher, null);
+    scan(in, index.collector());
+
+    return index;
+  }
+
+  /**
+   * Scans a file and collects all occurrences.
+   *
+   * @param file The file.
+   * @param charset The encoding of the file.
+   * @return The occurrences.
+   * @throws IOException If the file could not be read.
+   */
+  public OccurrenceIndex scan(File file, Charset charset) throws IOException {
+    final OccurrenceIndex index = new OccurrenceIndex(matcher, file);
+    try (Reader in = new InputStreamReader(new FileInputStream(file), charset)) {
+      scan(in, index.collector());
+    }
+
+    return index;
+  }
+
+  /**
+   * Scans many files in parallel. The matcher is shared by all tasks, so the cost of building it is paid only once.
+   *
+   * @param files The files.
+   * @param charset The encoding of the files.
+   * @param executor Runs one task per file.
+   * @return The occurrences per file, in the order of the files.
+   * @throws IOException If any of the files could not be read.
+   */
+  public List<OccurrenceIndex> scan(Collection<File> files, final Charset charset, ExecutorService executor)
+      throws IOException {
+    final List<Future<OccurrenceIndex>> futures = new ArrayList<>(files.size());
+    for (final File file : files) {
+      futures.add(executor.submit(new Callable<OccurrenceIndex>() {
+        @Override
+        public OccurrenceIndex call() throws IOException {
+          return scan(file, charset);
+        }
+      }));
+    }
+
+    final List<OccurrenceIndex> indices = new ArrayList<>(files.size());
+    try {
+      for (Future<OccurrenceIndex> future : futures)
+        indices.add(future.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while scanning files");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      if (e.getCause() instanceof Error)
+        throw (Error) e.getCause();
+      throw new IOException("Scanning failed", e.getCause());
+    } finally {
+      for (Future<OccurrenceIndex> future : futures)
+        future.cancel(true);
+    }
+
+    return indices;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("KeyScanner[matcher: %s, buffer size: %d]", matcher, bufferSize);
+  }
+
+  /**
+   * Fills the window as far as possible.
+   *
+   * @return Whether the end of the text has been reached.
+   */
+  private static boolean fill(Reader in, Window window) throws IOException {
+    int charsRead;
+    while (window.length < window.chars.length) {
+      if ((charsRead = in.read(window.chars, window.length, window.chars.length - window.length)) == -1)
+        return true;
+      window.length += charsRead;
+    }
+
+    return false;
+  }
+
+  /**
+   * The part of the text that is currently in memory.
+   */
+  private static class Window implements CharSequence {
+    private final char[] chars;
+    private int length;
+
+    public Window(char[] chars) {
+      this.chars = chars;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, 0, length);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package achwie.javaio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Looks up the replacements in a map every time they are needed, so changed values are visible immediately (but added
+ * or removed keys are not).
+ */
+class MapReplacements implements Replacements {
+  private final KeyMatcher matcher;
+  private final Map<Object, Object> map;
+  private final KeyAnalysis analysis;
+  private final MatchStrategy strategy;
+
+  public MapReplacements(KeyMatcher matcher, Map<Object, Object> map) {
+    this(matcher, map, null, null);
+  }
+
+  private MapReplacements(KeyMatcher matcher, Map<Object, Object> map, KeyAnalysis analysis, MatchStrategy strategy) {
+    this.matcher = matcher;
+    this.map = map;
+    this.analysis = analysis;
+    this.strategy = strategy;
+  }
+
+  /**
+   * Builds the matcher that suits the keys of the map best.
+   */
+  public static MapReplacements of(Map<Object, Object> map) {
+    return of(map, MatchStrategy.AUTO);
+  }
+
+  /**
+   * Builds a matcher for the keys of the map.
+   *
+   * @param strategy The strategy to use, or {@link MatchStrategy#AUTO} to pick the best one.
+   */
+  public static MapReplacements of(Map<Object, Object> map, MatchStrategy strategy) {
+    final KeyAnalysis analysis = KeyAnalysis.of(map.keySet());
+    final MatchStrategy used = (strategy == MatchStrategy.AUTO) ? analysis.recommendedStrategy() : strategy;
+
+    return new MapReplacements(analysis.createMatcher(used), map, analysis, used);
+  }
+
+  /**
+   * Builds a search tree for the keys of the map, which optionally matches them regardless of case.
+   */
+  public static MapReplacements of(Map<Object, Object> map, boolean ignoreCase) {
+    return new MapReplacements(new StringListSearchTree(keysAsSortedListOfStrings(map, ignoreCase), ignoreCase), map);
+  }
+
+  private static List<String> keysAsSortedListOfStrings(Map<Object, Object> map, boolean ignoreCase) {
+    List<String> sortedStrings = new ArrayList<>(map.size());
+    for (Object key : map.keySet())
+      sortedStrings.add(key.toString());
+
+    if (ignoreCase)
+      Collections.sort(sortedStrings, String.CASE_INSENSITIVE_ORDER);
+    else
+      Collections.sort(sortedStrings);
+
+    return sortedStrings;
+  }
+
+  /**
+   * @return The analysis of the keys or {@code null}, if the matcher was given.
+   */
+  public KeyAnalysis analysis() {
+    return analysis;
+  }
+
+  /**
+   * @return The strategy used to find the keys or {@code null}, if the matcher was given.
+   */
+  public MatchStrategy strategy() {
+    return strategy;
+  }
+
+  @Override
+  public KeyMatcher matcher() {
+    return matcher;
+  }
+
+  @Override
+  public Object valueOf(int keyId) {
+    return map.get(matcher.key(keyId));
+  }
+}
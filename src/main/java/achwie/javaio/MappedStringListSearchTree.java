@@ -0,0 +1,212 @@
+package achwie.javaio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * <p>
+ * A {@link StringListSearchTree} that has been written to a file with {@link StringListSearchTree#writeTo(File)} and is
+ * searched directly in the memory mapped file. Opening the file doesn't build any objects, which makes it cheap to load
+ * a tree with millions of keys; the operating system pages in the parts that are actually visited.
+ * </p>
+ * <p>
+ * The file consists of a header (the counts and flags like {@link #IGNORE_CASE_FLAG}), followed by these tables (all
+ * integers and chars big endian):
+ * </p>
+ * <ul>
+ * <li>nodes: label start, label length, key id, first child slot, child count (with {@link #DENSE_FLAG})</li>
+ * <li>child slots: node index per slot ({@code -1} for empty slots of dense nodes)</li>
+ * <li>key offsets: start of each key in the key pool, plus the end of the last key</li>
+ * <li>slot labels: first char of the child in each slot</li>
+ * <li>label pool and key pool</li>
+ * </ul>
+ */
+public class MappedStringListSearchTree implements KeyMatcher {
+  static final int MAGIC = 0x534c5354; // "SLST"
+  static final int VERSION = 2;
+  static final int DENSE_FLAG = 0x80000000;
+  static final int IGNORE_CASE_FLAG = 0x1;
+  private static final int HEADER_SIZE = 9 * 4;
+  private static final int NODE_SIZE = 5 * 4;
+  private static final int DENSE_SIZE = 128;
+
+  private final ByteBuffer buffer;
+  // Maps every char to its case-insensitive form or null if the case matters
+  private final char[] fold;
+  private final int keyCount;
+  private final int maxKeyLength;
+  private final int nodesStart;
+  private final int slotNodesStart;
+  private final int keyOffsetsStart;
+  private final int slotLabelsStart;
+  private final int labelPoolStart;
+  private final int keyPoolStart;
+
+  private MappedStringListSearchTree(ByteBuffer buffer) {
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+      throw new IllegalArgumentException("Not a search tree file");
+    if (buffer.getInt(4) != VERSION)
+      throw new IllegalArgumentException("Unsupported search tree file version: " + buffer.getInt(4));
+
+    final int nodeCount = buffer.getInt(8);
+    final int slotCount = buffer.getInt(20);
+    final int labelPoolLength = buffer.getInt(24);
+    final int keyPoolLength = buffer.getInt(28);
+
+    this.buffer = buffer;
+    this.keyCount = buffer.getInt(12);
+    this.maxKeyLength = buffer.getInt(16);
+    this.fold = ((buffer.getInt(32) & IGNORE_CASE_FLAG) != 0) ? CaseFolding.TABLE : null;
+    this.nodesStart = HEADER_SIZE;
+    this.slotNodesStart = nodesStart + nodeCount * NODE_SIZE;
+    this.keyOffsetsStart = slotNodesStart + slotCount * 4;
+    this.slotLabelsStart = keyOffsetsStart + (keyCount + 1) * 4;
+    this.labelPoolStart = slotLabelsStart + slotCount * 2;
+    this.keyPoolStart = labelPoolStart + labelPoolLength * 2;
+
+    if (keyPoolStart + (long) keyPoolLength * 2 > buffer.capacity())
+      throw new IllegalArgumentException("Search tree file is truncated");
+  }
+
+  /**
+   * Maps a file written by {@link StringListSearchTree#writeTo(File)}.
+   * 
+   * @param file The file to map.
+   * @return The search tree.
+   * @throws IOException If the file could not be mapped.
+   */
+  public static MappedStringListSearchTree open(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      if (channel.size() > Integer.MAX_VALUE)
+        throw new IOException("Search tree file is too large to be mapped: " + file);
+
+      // The mapping stays valid after the channel is closed
+      return new MappedStringListSearchTree(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  @Override
+  public int match(CharSequence str, int offset) {
+    final int end = str.length();
+    int node = 0;
+    int pos = offset;
+    int match = -1;
+
+    while (true) {
+      final int nodeStart = nodesStart + node * NODE_SIZE;
+      final int labelStart = labelPoolStart + buffer.getInt(nodeStart) * 2;
+      final int labelLength = buffer.getInt(nodeStart + 4);
+
+      if (pos + labelLength > end)
+        return match;
+      for (int i = 0; i < labelLength; i++)
+        if (buffer.getChar(labelStart + i * 2) != charAt(str, pos + i))
+          return match;
+
+      pos += labelLength;
+
+      // Keep going, a longer key might still match
+      final int keyId = buffer.getInt(nodeStart + 8);
+      if (keyId != -1)
+        match = keyId;
+
+      if (pos >= end)
+        return match;
+
+      node = child(buffer.getInt(nodeStart + 12), buffer.getInt(nodeStart + 16), charAt(str, pos));
+      if (node == -1)
+        return match;
+    }
+  }
+
+  @Override
+  public boolean isKeyPrefix(CharSequence str, int offset) {
+    final int end = str.length();
+    int node = 0;
+    int pos = offset;
+
+    while (true) {
+      final int nodeStart = nodesStart + node * NODE_SIZE;
+      final int labelStart = labelPoolStart + buffer.getInt(nodeStart) * 2;
+      final int labelLength = buffer.getInt(nodeStart + 4);
+
+      final int len = Math.min(end - pos, labelLength);
+      for (int i = 0; i < len; i++)
+        if (buffer.getChar(labelStart + i * 2) != charAt(str, pos + i))
+          return false;
+
+      // The text ends within this node, so every key below it is longer
+      if (len < labelLength)
+        return true;
+
+      pos += len;
+      final int childStart = buffer.getInt(nodeStart + 12);
+      final int childInfo = buffer.getInt(nodeStart + 16);
+      if (pos >= end)
+        return childInfo != 0;
+
+      node = child(childStart, childInfo, charAt(str, pos));
+      if (node == -1)
+        return false;
+    }
+  }
+
+  private char charAt(CharSequence str, int index) {
+    final char ch = str.charAt(index);
+    return (fold != null) ? fold[ch] : ch;
+  }
+
+  private int child(int childStart, int childInfo, char ch) {
+    if ((childInfo & DENSE_FLAG) != 0)
+      return (ch < DENSE_SIZE) ? buffer.getInt(slotNodesStart + (childStart + ch) * 4) : -1;
+
+    int low = childStart;
+    int high = childStart + childInfo - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final char label = buffer.getChar(slotLabelsStart + mid * 2);
+      if (label < ch)
+        low = mid + 1;
+      else if (label > ch)
+        high = mid - 1;
+      else
+        return buffer.getInt(slotNodesStart + mid * 4);
+    }
+
+    return -1;
+  }
+
+  @Override
+  public String key(int id) {
+    final int start = buffer.getInt(keyOffsetsStart + id * 4);
+    final char[] key = new char[keyLength(id)];
+    for (int i = 0; i < key.length; i++)
+      key[i] = buffer.getChar(keyPoolStart + (start + i) * 2);
+
+    return new String(key);
+  }
+
+  @Override
+  public int keyLength(int id) {
+    return buffer.getInt(keyOffsetsStart + (id + 1) * 4) - buffer.getInt(keyOffsetsStart + id * 4);
+  }
+
+  @Override
+  public int keyCount() {
+    return keyCount;
+  }
+
+  @Override
+  public int maxKeyLength() {
+    return maxKeyLength;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("MappedStringListSearchTree[keys: %d, size: %d bytes]", keyCount, buffer.capacity());
+  }
+}
@@ -0,0 +1,27 @@
+package achwie.javaio;
+
+/**
+ * The ways to find the keys of a replacement map in a text. See {@link KeyAnalysis} for how {@link #AUTO} chooses
+ * between them.
+ */
+public enum MatchStrategy {
+  /**
+   * Picks the fastest strategy that works for the keys.
+   */
+  AUTO,
+
+  /**
+   * Compares a single key directly with the text.
+   */
+  SINGLE_KEY,
+
+  /**
+   * Looks up keys that are enclosed in common delimiters (like {@code ${name}}) in a hash table.
+   */
+  DELIMITED,
+
+  /**
+   * Walks a {@link StringListSearchTree}, which works for any keys.
+   */
+  SEARCH_TREE
+}
@@ -0,0 +1,108 @@
+package achwie.javaio;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * The occurrences of keys found by a {@link KeyScanner}, held in primitive arrays (16 bytes per occurrence), in the
+ * order they appear in the text.
+ */
+public class OccurrenceIndex {
+  private final KeyMatcher matcher;
+  private final File file;
+  private int[] keyIds = new int[16];
+  private long[] offsets = new long[16];
+  private int[] lines = new int[16];
+  private int size;
+
+  OccurrenceIndex(KeyMatcher matcher, File file) {
+    this.matcher = matcher;
+    this.file = file;
+  }
+
+  /**
+   * @return The scanned file or {@code null}, if a reader was scanned.
+   */
+  public File file() {
+    return file;
+  }
+
+  /**
+   * @return The number of occurrences.
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int keyId(int index) {
+    checkIndex(index);
+    return keyIds[index];
+  }
+
+  public String key(int index) {
+    return matcher.key(keyId(index));
+  }
+
+  /**
+   * @return The offset of the first char of the occurrence in the text.
+   */
+  public long offset(int index) {
+    checkIndex(index);
+    return offsets[index];
+  }
+
+  /**
+   * @return The line (starting at 1) the occurrence starts in.
+   */
+  public int line(int index) {
+    checkIndex(index);
+    return lines[index];
+  }
+
+  /**
+   * @return The number of occurrences of the key.
+   */
+  public int countOf(int keyId) {
+    int count = 0;
+    for (int i = 0; i < size; i++)
+      if (keyIds[i] == keyId)
+        count++;
+
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("OccurrenceIndex[file: %s, occurrences: %d]", file, size);
+  }
+
+  KeyScanner.OccurrenceHandler collector() {
+    return new KeyScanner.OccurrenceHandler() {
+      @Override
+      public void occurrence(int keyId, long offset, int line) {
+        add(keyId, offset, line);
+      }
+    };
+  }
+
+  private void add(int keyId, long offset, int line) {
+    if (size == keyIds.length) {
+      keyIds = Arrays.copyOf(keyIds, size * 2);
+      offsets = Arrays.copyOf(offsets, size * 2);
+      lines = Arrays.copyOf(lines, size * 2);
+    }
+
+    keyIds[size] = keyId;
+    offsets[size] = offset;
+    lines[size++] = line;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+  }
+}
@@ -0,0 +1,440 @@
+package achwie.javaio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * Finds literal keys and keys given as patterns in a single pass. All of them are compiled into one deterministic
+ * automaton (DFA), so each char of the text is looked at once per match attempt, no matter how many keys and patterns
+ * there are.
+ * </p>
+ * <p>
+ * The pattern syntax is a small subset of regular expressions, limited to patterns of a fixed length, so the reader
+ * never needs more look ahead than the longest key:
+ * </p>
+ * <ul>
+ * <li>{@code .} matches any char,</li>
+ * <li>{@code [abc]}, {@code [a-z0-9]} and {@code [^a-z]} match a char of (or not of) a class,</li>
+ * <li>{@code {n}} repeats the preceding char or class exactly {@code n} times,</li>
+ * <li>{@code \} escapes the following char, all other chars match themselves.</li>
+ * </ul>
+ * <p>
+ * The pattern itself is the key, so its replacement is looked up by the pattern string:
+ * </p>
+ *
+ * <pre>
+ * final Properties props = new Properties();
+ * props.put(&quot;${name}&quot;, &quot;World&quot;);
+ * props.put(&quot;token-[0-9a-f]{32}&quot;, &quot;token-***&quot;);
+ *
+ * final KeyMatcher keys = PatternKeyMatcher.compile(Arrays.asList(&quot;${name}&quot;),
+ *     Arrays.asList(&quot;token-[0-9a-f]{32}&quot;));
+ * final Reader r = new PropertiesFilterReader(new FileReader(&quot;input.txt&quot;), keys, props);
+ * </pre>
+ * <p>
+ * As with the search tree, the longest match wins. If several keys match with the same length, literal keys win over
+ * patterns and otherwise the one given first.
+ * </p>
+ */
+public class PatternKeyMatcher implements KeyMatcher {
+  private static final int MAX_STATES = 1 << 16;
+  private static final int ASCII_SIZE = 128;
+  private static final char[] ANY_CHAR = { 0, Character.MAX_VALUE };
+
+  private final String[] keys;
+  private final int[] keyLengths;
+  private final int maxKeyLength;
+  // Chars are grouped into classes that no key distinguishes; each class is a range starting at one of the bounds
+  private final int[] classStarts;
+  private final int[] asciiClasses = new int[ASCII_SIZE];
+  private final int classCount;
+  // Per state: the next state for each class (-1 if no key matches any more), the key accepted in the state (-1 if
+  // none) and whether a longer key might still match
+  private int[] transitions;
+  private int[] accepting;
+  private boolean[] extensible;
+  private int stateCount;
+
+  private PatternKeyMatcher(List<String> keys, List<char[][]> charSets) {
+    this.keys = keys.toArray(new String[keys.size()]);
+    this.keyLengths = new int[keys.size()];
+    int maxLen = 0;
+    for (int i = 0; i < keyLengths.length; i++) {
+      keyLengths[i] = charSets.get(i).length;
+      maxLen = Math.max(maxLen, keyLengths[i]);
+    }
+    this.maxKeyLength = maxLen;
+
+    this.classStarts = createClasses(charSets);
+    this.classCount = classStarts.length;
+    for (char ch = 0; ch < ASCII_SIZE; ch++)
+      asciiClasses[ch] = findClass(ch);
+
+    buildAutomaton(charSets);
+  }
+
+  /**
+   * Compiles literal keys and patterns into one matcher. The ids of the literal keys come first (in the order given),
+   * followed by the patterns. Empty and duplicate keys are ignored.
+   *
+   * @param literals The keys that match exactly.
+   * @param patterns The keys that are patterns.
+   * @return The matcher.
+   * @throws IllegalArgumentException If a pattern is invalid or the keys and patterns are too complex to be compiled.
+   */
+  public static PatternKeyMatcher compile(Collection<String> literals, Collection<String> patterns) {
+    final Set<String> seen = new LinkedHashSet<>();
+    final List<String> keys = new ArrayList<>();
+    final List<char[][]> charSets = new ArrayList<>();
+
+    for (String literal : literals) {
+      if (literal.isEmpty() || !seen.add(literal))
+        continue;
+
+      final char[][] sets = new char[literal.length()][];
+      for (int i = 0; i < sets.length; i++)
+        sets[i] = new char[] { literal.charAt(i), literal.charAt(i) };
+      keys.add(literal);
+      charSets.add(sets);
+    }
+
+    for (String pattern : patterns) {
+      final char[][] sets = parse(pattern);
+      if (sets.length == 0 || !seen.add(pattern))
+        continue;
+
+      keys.add(pattern);
+      charSets.add(sets);
+    }
+
+    return new PatternKeyMatcher(keys, charSets);
+  }
+
+  @Override
+  public int match(CharSequence str, int offset) {
+    final int end = str.length();
+    int state = 0;
+    int match = -1;
+
+    for (int pos = offset; pos < end && state != -1; pos++) {
+      state = transitions[state * classCount + classOf(str.charAt(pos))];
+      if (state != -1 && accepting[state] != -1)
+        match = accepting[state];
+    }
+
+    return match;
+  }
+
+  @Override
+  public boolean isKeyPrefix(CharSequence str, int offset) {
+    final int end = str.length();
+    int state = 0;
+
+    for (int pos = offset; pos < end && state != -1; pos++)
+      state = transitions[state * classCount + classOf(str.charAt(pos))];
+
+    return state != -1 && extensible[state];
+  }
+
+  @Override
+  public String key(int id) {
+    return keys[id];
+  }
+
+  @Override
+  public int keyLength(int id) {
+    return keyLengths[id];
+  }
+
+  @Override
+  public int keyCount() {
+    return keys.length;
+  }
+
+  @Override
+  public int maxKeyLength() {
+    return maxKeyLength;
+  }
+
+  public int stateCount() {
+    return stateCount;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("PatternKeyMatcher[keys: %d, states: %d, char classes: %d]", keys.length, stateCount,
+        classCount);
+  }
+
+  private int classOf(char ch) {
+    return (ch < ASCII_SIZE) ? asciiClasses[ch] : findClass(ch);
+  }
+
+  private int findClass(char ch) {
+    final int index = Arrays.binarySearch(classStarts, ch);
+    return (index >= 0) ? index : -index - 2;
+  }
+
+  /**
+   * Splits the chars into the ranges between all bounds of the char sets, so every set consists of whole classes.
+   */
+  private static int[] createClasses(List<char[][]> charSets) {
+    final TreeSet<Integer> starts = new TreeSet<>();
+    starts.add(0);
+    for (char[][] sets : charSets) {
+      for (char[] set : sets) {
+        for (int i = 0; i < set.length; i += 2) {
+          starts.add((int) set[i]);
+          if (set[i + 1] < Character.MAX_VALUE)
+            starts.add(set[i + 1] + 1);
+        }
+      }
+    }
+
+    final int[] classStarts = new int[starts.size()];
+    int i = 0;
+    for (int start : starts)
+      classStarts[i++] = start;
+
+    return classStarts;
+  }
+
+  /**
+   * Builds the DFA by subset construction. A state is the set of positions within the keys that are reached by the
+   * chars read so far; the positions are numbered consecutively for all keys.
+   */
+  private void buildAutomaton(List<char[][]> charSets) {
+    final int[] firstPosition = new int[keys.length + 1];
+    for (int i = 0; i < keys.length; i++)
+      firstPosition[i + 1] = firstPosition[i] + keyLengths[i] + 1;
+    final int[] keyOfPosition = new int[firstPosition[keys.length]];
+    for (int i = 0; i < keys.length; i++)
+      Arrays.fill(keyOfPosition, firstPosition[i], firstPosition[i + 1], i);
+
+    final Map<PositionSet, Integer> stateIds = new HashMap<>();
+    final List<PositionSet> states = new ArrayList<>();
+    transitions = new int[16 * classCount];
+    accepting = new int[16];
+    extensible = new boolean[16];
+
+    final int[] start = new int[keys.length];
+    for (int i = 0; i < keys.length; i++)
+      start[i] = firstPosition[i];
+    states.add(new PositionSet(start, start.length));
+    stateIds.put(states.get(0), 0);
+
+    final int[] next = new int[keyOfPosition.length];
+    for (int state = 0; state < states.size(); state++) {
+      final PositionSet positions = states.get(state);
+      if (states.size() * classCount > transitions.length) {
+        final int newSize = Math.max(states.size(), accepting.length * 2);
+        transitions = Arrays.copyOf(transitions, newSize * classCount);
+        accepting = Arrays.copyOf(accepting, newSize);
+        extensible = Arrays.copyOf(extensible, newSize);
+      }
+
+      accepting[state] = -1;
+      for (int i = 0; i < positions.length; i++) {
+        final int key = keyOfPosition[positions.items[i]];
+        final int pos = positions.items[i] - firstPosition[key];
+        if (pos == keyLengths[key] && (accepting[state] == -1 || key < accepting[state]))
+          accepting[state] = key;
+        else if (pos < keyLengths[key])
+          extensible[state] = true;
+      }
+
+      for (int cls = 0; cls < classCount; cls++) {
+        final char ch = (char) classStarts[cls];
+        int nextLength = 0;
+        for (int i = 0; i < positions.length; i++) {
+          final int key = keyOfPosition[positions.items[i]];
+          final int pos = positions.items[i] - firstPosition[key];
+          if (pos < keyLengths[key] && contains(charSets.get(key)[pos], ch))
+            next[nextLength++] = positions.items[i] + 1;
+        }
+
+        if (nextLength == 0) {
+          transitions[state * classCount + cls] = -1;
+          continue;
+        }
+
+        final PositionSet nextPositions = new PositionSet(next, nextLength);
+        Integer nextState = stateIds.get(nextPositions);
+        if (nextState == null) {
+          if (states.size() == MAX_STATES)
+            throw new IllegalArgumentException(String.format("Keys are too complex, they need more than %d states",
+                MAX_STATES));
+
+          nextState = states.size();
+          states.add(nextPositions);
+          stateIds.put(nextPositions, nextState);
+        }
+        transitions[state * classCount + cls] = nextState;
+      }
+    }
+
+    stateCount = states.size();
+    transitions = Arrays.copyOf(transitions, stateCount * classCount);
+    accepting = Arrays.copyOf(accepting, stateCount);
+    extensible = Arrays.copyOf(extensible, stateCount);
+  }
+
+  private static boolean contains(char[] set, char ch) {
+    for (int i = 0; i < set.length; i += 2)
+      if (ch >= set[i] && ch <= set[i + 1])
+        return true;
+
+    return false;
+  }
+
+  /**
+   * Parses a pattern into the set of chars allowed at each position. A set is given as pairs of first and last char of
+   * its ranges.
+   */
+  static char[][] parse(String pattern) {
+    final List<char[]> sets = new ArrayList<>();
+    int i = 0;
+    while (i < pattern.length()) {
+      final char ch = pattern.charAt(i);
+      switch (ch) {
+      case '.':
+        sets.add(ANY_CHAR);
+        i++;
+        break;
+      case '[':
+        i = parseClass(pattern, i, sets);
+        break;
+      case '{':
+        i = parseRepetition(pattern, i, sets);
+        break;
+      case '\\':
+        if (i + 1 == pattern.length())
+          throw invalid(pattern, i, "nothing to escape");
+        sets.add(new char[] { pattern.charAt(i + 1), pattern.charAt(i + 1) });
+        i += 2;
+        break;
+      case '*':
+      case '+':
+      case '?':
+      case '(':
+      case ')':
+      case '|':
+        throw invalid(pattern, i, "only patterns of a fixed length are supported");
+      default:
+        sets.add(new char[] { ch, ch });
+        i++;
+      }
+    }
+
+    return sets.toArray(new char[sets.size()][]);
+  }
+
+  private static int parseClass(String pattern, int start, List<char[]> sets) {
+    int i = start + 1;
+    final boolean negated = i < pattern.length() && pattern.charAt(i) == '^';
+    if (negated)
+      i++;
+
+    final boolean[] chars = new boolean[Character.MAX_VALUE + 1];
+    boolean empty = true;
+    while (true) {
+      if (i == pattern.length())
+        throw invalid(pattern, start, "unclosed char class");
+
+      char first = pattern.charAt(i++);
+      if (first == ']' && !empty)
+        break;
+      if (first == '\\' && i < pattern.length())
+        first = pattern.charAt(i++);
+
+      char last = first;
+      if (i + 1 < pattern.length() && pattern.charAt(i) == '-' && pattern.charAt(i + 1) != ']') {
+        last = pattern.charAt(i + 1);
+        i += 2;
+        if (last == '\\' && i < pattern.length())
+          last = pattern.charAt(i++);
+        if (last < first)
+          throw invalid(pattern, i, "invalid range");
+      }
+
+      Arrays.fill(chars, first, last + 1, true);
+      empty = false;
+    }
+
+    // Collect the ranges of the (possibly negated) class
+    final List<Character> bounds = new ArrayList<>();
+    for (int ch = 0; ch <= Character.MAX_VALUE; ch++) {
+      if (chars[ch] != negated && (ch == 0 || chars[ch - 1] == negated))
+        bounds.add((char) ch);
+      if (chars[ch] != negated && (ch == Character.MAX_VALUE || chars[ch + 1] == negated))
+        bounds.add((char) ch);
+    }
+    if (bounds.isEmpty())
+      throw invalid(pattern, start, "char class matches no char");
+
+    final char[] set = new char[bounds.size()];
+    for (int j = 0; j < set.length; j++)
+      set[j] = bounds.get(j);
+    sets.add(set);
+
+    return i;
+  }
+
+  private static int parseRepetition(String pattern, int start, List<char[]> sets) {
+    final int end = pattern.indexOf('}', start);
+    if (end == -1)
+      throw invalid(pattern, start, "unclosed repetition");
+    if (sets.isEmpty())
+      throw invalid(pattern, start, "nothing to repeat");
+
+    final int count;
+    try {
+      count = Integer.parseInt(pattern.substring(start + 1, end));
+    } catch (NumberFormatException e) {
+      throw invalid(pattern, start, "only repetitions of a fixed count like {3} are supported");
+    }
+    if (count < 1)
+      throw invalid(pattern, start, "repetition count must be positive");
+
+    final char[] repeated = sets.get(sets.size() - 1);
+    for (int i = 1; i < count; i++)
+      sets.add(repeated);
+
+    return end + 1;
+  }
+
+  private static IllegalArgumentException invalid(String pattern, int index, String reason) {
+    return new IllegalArgumentException(String.format("Invalid pattern <%s> at index %d: %s", pattern, index, reason));
+  }
+
+  /**
+   * The positions within the keys that make up a state of the DFA, in ascending order.
+   */
+  private static class PositionSet {
+    private final int[] items;
+    private final int length;
+
+    public PositionSet(int[] items, int length) {
+      this.items = Arrays.copyOf(items, length);
+      this.length = length;
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(items);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof PositionSet && Arrays.equals(items, ((PositionSet) obj).items);
+    }
+  }
+}
@@ -0,0 +1,300 @@
+package achwie.javaio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>
+ * Filters a byte stream through a {@link PropertiesFilterReader}, running each stage of the work on its own thread:
+ * </p>
+ * <ol>
+ * <li>reading, decompressing (optional) and decoding the input,</li>
+ * <li>replacing the properties (on the calling thread),</li>
+ * <li>encoding, compressing (optional) and writing the output.</li>
+ * </ol>
+ * <p>
+ * The stages hand chars to each other through lock-free {@link SpscCharRingBuffer}s, so a single large (compressed)
+ * file can keep three cores busy and the total time approaches the one of the slowest stage.
+ * </p>
+ *
+ * <pre>
+ * final PipelinedPropertiesFilter filter = new PipelinedPropertiesFilter(props);
+ * filter.setInputCompressed(true);
+ * filter.setOutputCompressed(true);
+ * filter.filter(new FileInputStream(&quot;input.txt.gz&quot;), new FileOutputStream(&quot;output.txt.gz&quot;));
+ * </pre>
+ */
+public class PipelinedPropertiesFilter {
+  private final Replacements replacements;
+  private Charset inputCharset = Charset.defaultCharset();
+  private Charset outputCharset = Charset.defaultCharset();
+  private boolean inputCompressed;
+  private boolean outputCompressed;
+  private int chunkSize = 64 * 1024;
+  private int queueCapacity = 4;
+
+  /**
+   * @param replacements The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements.
+   */
+  public PipelinedPropertiesFilter(Map<Object, Object> replacements) {
+    this(MapReplacements.of(replacements));
+  }
+
+  /**
+   * @param replacements The keys to search for and their replacements.
+   */
+  public PipelinedPropertiesFilter(Replacements replacements) {
+    this.replacements = replacements;
+  }
+
+  public void setInputCharset(Charset inputCharset) {
+    this.inputCharset = inputCharset;
+  }
+
+  public void setOutputCharset(Charset outputCharset) {
+    this.outputCharset = outputCharset;
+  }
+
+  /**
+   * @param inputCompressed Whether the input is gzip compressed.
+   */
+  public void setInputCompressed(boolean inputCompressed) {
+    this.inputCompressed = inputCompressed;
+  }
+
+  /**
+   * @param outputCompressed Whether the output should be gzip compressed.
+   */
+  public void setOutputCompressed(boolean outputCompressed) {
+    this.outputCompressed = outputCompressed;
+  }
+
+  /**
+   * @param chunkSize The number of chars a stage reads before handing them to the next one.
+   */
+  public void setChunkSize(int chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * @param queueCapacity The number of chunks that may wait between two stages, which sizes the ring buffers.
+   */
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Filters the input into the output. Both streams are closed when this method returns.
+   *
+   * @param in The input to read from.
+   * @param out The output to write to.
+   * @throws IOException If any of the stages fails.
+   */
+  public void filter(InputStream in, OutputStream out) throws IOException {
+    final int capacity = chunkSize * queueCapacity;
+    final SpscCharRingBuffer decoded = new SpscCharRingBuffer(capacity, SpscCharRingBuffer.WaitStrategy.PARK);
+    final SpscCharRingBuffer filtered = new SpscCharRingBuffer(capacity, SpscCharRingBuffer.WaitStrategy.PARK);
+    final DecodeStage decoder = new DecodeStage(in, decoded);
+    final EncodeStage encoder = new EncodeStage(out, filtered);
+    final Thread decodeThread = new Thread(decoder, "PipelinedPropertiesFilter-decode");
+    final Thread encodeThread = new Thread(encoder, "PipelinedPropertiesFilter-encode");
+    decodeThread.start();
+    encodeThread.start();
+
+    IOException failure = null;
+    try (Reader r = new PropertiesFilterReader(new RingReader(decoded), replacements)) {
+      final char[] chars = new char[chunkSize];
+      int len;
+      while ((len = read(r, chars)) > 0 && encoder.failure == null)
+        filtered.put(chars, 0, len);
+    } catch (IOException e) {
+      failure = e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure = new InterruptedIOException("Interrupted while filtering");
+    } finally {
+      // Make sure neither of the other stages waits forever. A read from a source that ignores interrupts, like a
+      // socket stream, is only stopped by closing the source.
+      decodeThread.interrupt();
+      if (decodeThread.isAlive())
+        decoder.abort();
+      filtered.close();
+      joinUninterruptibly(decodeThread);
+      joinUninterruptibly(encodeThread);
+    }
+
+    if (failure == null)
+      failure = decoder.failure;
+    if (failure == null)
+      failure = encoder.failure;
+
+    if (failure != null)
+      throw failure;
+  }
+
+  /**
+   * Fills the array as far as possible, so the chunks don't get smaller than necessary.
+   */
+  private int read(Reader r, char[] chars) throws IOException {
+    int len = 0;
+    int charsRead;
+    while (len < chars.length && (charsRead = r.read(chars, len, chars.length - len)) != -1)
+      len += charsRead;
+
+    return len;
+  }
+
+  private static void joinUninterruptibly(Thread t) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        t.join();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  /**
+   * Reads, decompresses and decodes the input.
+   */
+  private class DecodeStage implements Runnable {
+    private final InputStream in;
+    private final SpscCharRingBuffer ring;
+    private volatile IOException failure;
+    private volatile boolean aborted;
+
+    public DecodeStage(InputStream in, SpscCharRingBuffer ring) {
+      this.in = in;
+      this.ring = ring;
+    }
+
+    /**
+     * Closes the input, as the filter stage has given up.
+     */
+    public void abort() {
+      aborted = true;
+      try {
+        in.close();
+      } catch (IOException e) {
+        // The failure of the filter stage is reported
+      }
+    }
+
+    @Override
+    public void run() {
+      // The input is a resource of its own, as the GZIPInputStream fails on a corrupt header before it is wrapped
+      try (InputStream source = in;
+          Reader r = new InputStreamReader(inputCompressed ? new GZIPInputStream(source, 64 * 1024) : source,
+              inputCharset)) {
+        final char[] chars = new char[chunkSize];
+        int len;
+        while ((len = read(r, chars)) > 0)
+          ring.put(chars, 0, len);
+      } catch (IOException e) {
+        // Reading from a closed input is expected to fail after an abort
+        if (!aborted)
+          failure = e;
+      } catch (InterruptedException e) {
+        // The filter stage has given up
+      } finally {
+        ring.close();
+      }
+    }
+  }
+
+  /**
+   * Encodes, compresses and writes the output.
+   */
+  private class EncodeStage implements Runnable {
+    private final OutputStream out;
+    private final SpscCharRingBuffer ring;
+    private final char[] chars = new char[chunkSize];
+    private volatile IOException failure;
+
+    public EncodeStage(OutputStream out, SpscCharRingBuffer ring) {
+      this.out = out;
+      this.ring = ring;
+    }
+
+    @Override
+    public void run() {
+      Writer w = null;
+      try {
+        w = new OutputStreamWriter(outputCompressed ? new GZIPOutputStream(out, 64 * 1024) : out, outputCharset);
+        int len;
+        while ((len = takeUninterruptibly()) != -1)
+          w.write(chars, 0, len);
+        w.close();
+      } catch (IOException e) {
+        failure = e;
+        // Keep draining, so the filter stage doesn't block
+        while (takeUninterruptibly() != -1)
+          ;
+        closeQuietly(w);
+      }
+    }
+
+    private int takeUninterruptibly() {
+      while (true) {
+        try {
+          return ring.take(chars, 0, chars.length);
+        } catch (InterruptedException e) {
+          // Only the end of the stream stops this stage
+        }
+      }
+    }
+
+    private void closeQuietly(Writer w) {
+      try {
+        if (w != null)
+          w.close();
+        else
+          out.close();
+      } catch (IOException e) {
+        // The first failure is reported
+      }
+    }
+  }
+
+  /**
+   * Reads the chars produced by the decode stage.
+   */
+  private static class RingReader extends Reader {
+    private final SpscCharRingBuffer ring;
+
+    public RingReader(SpscCharRingBuffer ring) {
+      this.ring = ring;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      try {
+        return ring.take(cbuf, off, len);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for input");
+      }
+    }
+
+    @Override
+    public void close() {
+      // The decode stage closes the input
+    }
+  }
+}
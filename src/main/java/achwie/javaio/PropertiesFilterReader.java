@@ -1,10 +1,9 @@
 package achwie.javaio;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.Writer;
 import java.util.Map;
 
 /**
@@ -47,15 +46,30 @@ import java.util.Map;
  * Description goes here.
  * </pre>
  * 
+ * <p>
+ * On JDKs with the Flight Recorder events API, a running recording shows reads from the source, slow {@code read()}
+ * calls, large replacements and the lifetime of each reader as events in the category {@code PropertiesFilterReader}.
+ * A reader decides which events it reports whenever a recording starts or stops, also while it is open; settings that
+ * are changed in a running recording take effect from the next start or stop. As long as nothing is recorded, the
+ * events cost a single check per {@code read()} call.
+ * </p>
+ * 
  * 
  * 
  * @author Achim Wiedemann, Oct 15, 2013
  */
 public class PropertiesFilterReader extends Reader {
+  // How many chars transferTo() looks ahead beyond the longest key, which bounds the runs it writes at once
+  private static final int TRANSFER_LOOK_AHEAD = 8192;
   private final Reader reader;
-  private final Map<Object, Object> replacements;
-  private final StringListSearchTree searchMap;
+  private final ReplacementRegistry registry;
+  // Null, unless a flight recording is running
+  private FilterEvents events;
+  private int eventsGeneration;
+  private Replacements replacements;
   private ReplacementBuffer buffer;
+  private boolean lowLatency;
+  private boolean eof;
 
   /**
    * Creates a {@code PropertiesFilterReader} using a source reader and a replacement map.
@@ -65,32 +79,157 @@ public class PropertiesFilterReader extends Reader {
    *          replacements.
    */
   public PropertiesFilterReader(Reader reader, Map<Object, Object> replacements) {
+    this(reader, MapReplacements.of(replacements));
+  }
+
+  /**
+   * Creates a {@code PropertiesFilterReader} using a source reader and a replacement map, whose keys are found with the
+   * given strategy. Normally, the strategy that suits the keys best is picked automatically (see {@link KeyAnalysis}).
+   * 
+   * @param reader The source reader to read from.
+   * @param replacements The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements.
+   * @param strategy The strategy to find the keys with, or {@link MatchStrategy#AUTO}.
+   * @throws IllegalArgumentException If the strategy doesn't work for the keys.
+   */
+  public PropertiesFilterReader(Reader reader, Map<Object, Object> replacements, MatchStrategy strategy) {
+    this(reader, MapReplacements.of(replacements, strategy));
+  }
+
+  /**
+   * Creates a {@code PropertiesFilterReader} using a source reader and a replacement map, whose keys optionally match
+   * regardless of case (e.g. {@code ${HOST}} also replaces {@code ${host}}). The text that isn't replaced is returned
+   * unchanged.
+   * 
+   * @param reader The source reader to read from.
+   * @param replacements The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements. When ignoring case, no two keys may only differ by case.
+   * @param ignoreCase Whether the keys should match regardless of case.
+   */
+  public PropertiesFilterReader(Reader reader, Map<Object, Object> replacements, boolean ignoreCase) {
+    this(reader, MapReplacements.of(replacements, ignoreCase));
+  }
+
+  /**
+   * Creates a {@code PropertiesFilterReader} using a source reader, a prebuilt matcher for the keys and a replacement
+   * map. This avoids building the search tree for every reader, e.g. by using a {@link MappedStringListSearchTree}.
+   * 
+   * @param reader The source reader to read from.
+   * @param keys The keys to search for. Every key must have a value in {@code replacements}.
+   * @param replacements The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements.
+   */
+  public PropertiesFilterReader(Reader reader, KeyMatcher keys, Map<Object, Object> replacements) {
+    this(reader, new MapReplacements(keys, replacements));
+  }
+
+  /**
+   * Creates a {@code PropertiesFilterReader} using a source reader and the keys and values to replace.
+   * 
+   * @param reader The source reader to read from.
+   * @param replacements The keys to search for and their replacements.
+   */
+  public PropertiesFilterReader(Reader reader, Replacements replacements) {
+    this(reader, replacements, null);
+  }
+
+  /**
+   * Creates a {@code PropertiesFilterReader} that picks up changes to the replacements while it is being read. The
+   * latest snapshot of the registry is used from the next call to {@code read()} on; a replacement that is partially
+   * read by then is finished with its old value.
+   * 
+   * @param reader The source reader to read from.
+   * @param registry The registry holding the replacements.
+   */
+  public PropertiesFilterReader(Reader reader, ReplacementRegistry registry) {
+    this(reader, registry.snapshot(), registry);
+  }
+
+  private PropertiesFilterReader(Reader reader, Replacements replacements, ReplacementRegistry registry) {
     this.reader = reader;
+    this.registry = registry;
     this.replacements = replacements;
     this.buffer = createBuffer();
-    this.searchMap = new StringListSearchTree(keysAsSortedListOfStrings(replacements));
+    this.eventsGeneration = FilterEvents.generation();
+    this.events = FilterEvents.open();
 
     initBuffer();
   }
 
-  private List<String> keysAsSortedListOfStrings(Map<Object, Object> map) {
-    List<String> sortedStrings = new ArrayList<>(map.size());
-    for (Object key : map.keySet())
-      sortedStrings.add(key.toString());
+  /**
+   * <p>
+   * Switches the low latency mode on or off (it is off by default). Normally, {@code read()} waits until it has filled
+   * the whole array and keeps the look ahead full, which is the fastest way through large inputs. In low latency mode,
+   * it only reads from the source while that doesn't block, and returns as soon as it has produced some chars. Only
+   * chars that might still turn out to be the beginning of a key are held back until more input arrives.
+   * </p>
+   * <p>
+   * This suits sources that deliver their content piece by piece, like sockets or interactive input, where the consumer
+   * should see the output as soon as possible (a consumer that writes it on should flush after every {@code read()}).
+   * </p>
+   *
+   * @param lowLatency Whether to return output as soon as it is available.
+   */
+  public void setLowLatency(boolean lowLatency) {
+    this.lowLatency = lowLatency;
+  }
 
-    Collections.sort(sortedStrings);
+  /**
+   * @return The strategy used to find the keys, or {@code null} if the reader was given its matcher.
+   */
+  public MatchStrategy getMatchStrategy() {
+    return (replacements instanceof MapReplacements) ? ((MapReplacements) replacements).strategy() : null;
+  }
 
-    return sortedStrings;
+  /**
+   * @return The analysis of the keys, which tells why the strategy was chosen, or {@code null} if the reader was given
+   *         its matcher.
+   */
+  public KeyAnalysis getKeyAnalysis() {
+    return (replacements instanceof MapReplacements) ? ((MapReplacements) replacements).analysis() : null;
   }
 
   @Override
   public int read(char[] cbuf, int off, int len) throws IOException {
+    if (eventsGeneration != FilterEvents.generation())
+      updateEvents();
+    if (events == null)
+      return filter(cbuf, off, len);
+
+    final Object event = events.beginRead();
+    final int charsRead = filter(cbuf, off, len);
+    events.endRead(event, len, charsRead);
+
+    return charsRead;
+  }
+
+  private int filter(char[] cbuf, int off, int len) throws IOException {
+    if (registry != null)
+      updateReplacements();
+
+    final KeyMatcher matcher = replacements.matcher();
     for (int i = 0; i < len; i++) {
-      buffer.readAhead(reader);
+      // Replacements are copied in bulk
+      if (buffer.inReplacement()) {
+        final int charsTaken = buffer.takeReplacement(cbuf, off + i, len - i);
+        if (charsTaken > 0) {
+          i += charsTaken - 1;
+          continue;
+        }
+      }
 
-      final Object key = searchMap.startOf(buffer.toString());
-      if (key != null)
-        buffer.replaceIfExists(key.toString(), replacements.get(key).toString());
+      if (!lowLatency)
+        readAhead();
+      else if (!readAheadWithoutBlocking(matcher, i == 0))
+        return i;
+
+      // The look ahead isn't refilled while a replacement is taken, so it must not be searched again until then
+      final int keyId = buffer.inReplacement() ? -1 : matcher.match(buffer.lookAhead(), 0);
+      // Streamed replacements are taken in bulk, and for an empty one, whatever follows the token is looked at instead
+      if (keyId != -1 && !replace(matcher, keyId)) {
+        i--;
+        continue;
+      }
 
       if (!buffer.hasMore())
         return (i != 0) ? i : -1; // Filled the buffer partially or not at all?
@@ -101,9 +240,200 @@ public class PropertiesFilterReader extends Reader {
     return len; // Filled the whole buffer
   }
 
+  /**
+   * Writes the rest of the filtered stream to {@code out}. Unlike a loop over {@code read()}, the text between keys and
+   * the replacements are written in bulk slices straight from the internal buffers. In low latency mode, {@code out} is
+   * flushed (if it is {@link Flushable}) before waiting for the source. Neither stream is closed.
+   *
+   * @param out The target.
+   * @return The number of chars written.
+   * @throws IOException If reading or writing fails.
+   */
+  public long transferTo(Appendable out) throws IOException {
+    long count = 0;
+    // The chars written before are counted by the events, which may change during a long transfer
+    long counted = 0;
+    buffer.grow(replacements.matcher().maxKeyLength() + TRANSFER_LOOK_AHEAD);
+
+    while (true) {
+      if (registry != null)
+        updateReplacements();
+      if (eventsGeneration != FilterEvents.generation()) {
+        if (events != null) {
+          events.endRefills();
+          events.written(count - counted);
+        }
+        counted = count;
+        updateEvents();
+      }
+
+      if (buffer.inReplacement()) {
+        count += buffer.transferReplacement(out);
+        continue;
+      }
+
+      final KeyMatcher matcher = replacements.matcher();
+      if (!lowLatency) {
+        fillLookAhead();
+      } else if (!readAheadWithoutBlocking(matcher, false)) {
+        if (out instanceof Flushable)
+          ((Flushable) out).flush();
+        readAheadWithoutBlocking(matcher, true);
+      }
+
+      final CharSequence lookAhead = buffer.lookAhead();
+      final int keyId = matcher.match(lookAhead, 0);
+      if (keyId != -1) {
+        // Like read(), take the first char of a replacement that is put into the look ahead, so it isn't searched again
+        if (replace(matcher, keyId) && !buffer.inReplacement()) {
+          buffer.transferLookAhead(out, 1);
+          count++;
+        }
+        continue;
+      }
+
+      if (!buffer.hasMore()) {
+        if (events != null) {
+          events.endRefills();
+          events.written(count - counted);
+        }
+        return count;
+      }
+
+      // The first char is decided, the following ones as far as the look ahead shows every key that may start there
+      final int maxKeyLength = matcher.maxKeyLength();
+      int run = 1;
+      while (run < lookAhead.length() && matcher.match(lookAhead, run) == -1
+          && (eof || lookAhead.length() - run >= maxKeyLength || !matcher.isKeyPrefix(lookAhead, run)))
+        run++;
+
+      buffer.transferLookAhead(out, run);
+      count += run;
+    }
+  }
+
+  /**
+   * Writes the rest of the filtered stream to {@code out}, see {@link #transferTo(Appendable)}. On Java 10 and later,
+   * this replaces the default implementation of {@code Reader}.
+   */
+  public long transferTo(Writer out) throws IOException {
+    return transferTo((Appendable) out);
+  }
+
+  /**
+   * In low latency mode, this tells accurately whether {@code read()} returns without waiting for the source.
+   * Otherwise, it only tells whether the source is ready, as a full read may still need more input than it has.
+   */
+  @Override
+  public boolean ready() throws IOException {
+    if (!lowLatency)
+      return reader.ready();
+
+    final KeyMatcher matcher = replacements.matcher();
+    while (!canTake(matcher) && reader.ready())
+      eof = readAhead() == -1;
+
+    return canTake(matcher);
+  }
+
   @Override
   public void close() throws IOException {
-    reader.close();
+    try {
+      buffer.close();
+    } finally {
+      if (events != null)
+        events.close();
+      reader.close();
+    }
+  }
+
+  /**
+   * Replaces the key at the beginning of the look ahead with its value.
+   *
+   * @return Whether the next char can be taken from the value, which isn't the case for streamed and empty values.
+   */
+  private boolean replace(KeyMatcher matcher, int keyId) throws IOException {
+    final Object value = replacements.valueOf(keyId);
+    if (value instanceof StreamedValue) {
+      if (events != null)
+        events.replaced(matcher.key(keyId), -1);
+      buffer.replace(matcher.keyLength(keyId), ((StreamedValue) value).open());
+      return false;
+    }
+
+    final String replacement = value.toString();
+    if (events != null)
+      events.replaced(matcher.key(keyId), replacement.length());
+    buffer.replace(matcher.keyLength(keyId), replacement);
+
+    return !replacement.isEmpty();
+  }
+
+  /**
+   * Decides again which events are reported, after a recording has started or stopped.
+   */
+  private void updateEvents() {
+    eventsGeneration = FilterEvents.generation();
+    events = FilterEvents.refresh(events);
+  }
+
+  private int readAhead() throws IOException {
+    if (events == null)
+      return buffer.readAhead(reader);
+
+    events.beginRefill();
+    final int charsRead = buffer.readAhead(reader);
+    events.endRefill(charsRead);
+
+    return charsRead;
+  }
+
+  /**
+   * Reads ahead until the look ahead is full or the source has ended.
+   */
+  private void fillLookAhead() throws IOException {
+    int charsRead;
+    while ((charsRead = readAhead()) > 0)
+      ;
+
+    if (charsRead == -1)
+      eof = true;
+  }
+
+  /**
+   * Reads ahead as long as the source is ready. It only waits for the source, if nothing can be taken from the buffer
+   * otherwise and {@code mayBlock} is set.
+   *
+   * @return {@code false}, if nothing can be taken without blocking.
+   */
+  private boolean readAheadWithoutBlocking(KeyMatcher matcher, boolean mayBlock) throws IOException {
+    while (!eof) {
+      final boolean ready = reader.ready();
+      if (!ready && canTake(matcher))
+        return true;
+      if (!ready && !mayBlock)
+        return false;
+
+      final int charsRead = readAhead();
+      if (charsRead == -1)
+        eof = true;
+      else if (charsRead == 0)
+        break; // Look ahead is full
+    }
+
+    return true;
+  }
+
+  /**
+   * Tells whether the next char can be taken from the buffer, i.e. it is part of a replacement or the look ahead is
+   * long enough to decide whether a key starts there. At the end of the source, {@code read()} won't block either.
+   */
+  private boolean canTake(KeyMatcher matcher) {
+    if (eof || buffer.inReplacement())
+      return true;
+
+    final CharSequence lookAhead = buffer.lookAhead();
+    return lookAhead.length() > 0 && !matcher.isKeyPrefix(lookAhead, 0);
   }
 
   protected ReplacementBuffer createBuffer() {
@@ -111,12 +441,21 @@ public class PropertiesFilterReader extends Reader {
   }
 
   private void initBuffer() {
-    int maxLen = 0;
-    for (Object key : replacements.keySet())
-      if (key.toString().length() > maxLen)
-        maxLen = key.toString().length();
+    // Without keys, the look ahead still has to hold the next char
+    buffer.initialize(Math.max(1, replacements.matcher().maxKeyLength()));
+  }
+
+  /**
+   * Switches to the latest snapshot of the registry. Between two chars, the reader only holds the look ahead (which is
+   * unfiltered input) and maybe a replacement that has already been resolved, so this is always safe.
+   */
+  private void updateReplacements() {
+    final Replacements latest = registry.snapshot();
+    if (latest == replacements)
+      return;
 
-    buffer.initialize(maxLen);
+    replacements = latest;
+    buffer.grow(latest.matcher().maxKeyLength());
   }
 
   /**
@@ -126,13 +465,68 @@ public class PropertiesFilterReader extends Reader {
   static interface ReplacementBuffer {
     public void initialize(int bufferSize);
 
-    public void readAhead(Reader reader) throws IOException;
+    /**
+     * Makes sure the look ahead holds at least {@code bufferSize} chars, without losing its contents.
+     */
+    public void grow(int bufferSize);
+
+    /**
+     * Fills the look ahead from {@code reader} with a single call to {@code read()}.
+     *
+     * @return The number of chars read, {@code 0} if the look ahead is full or a replacement is being taken, or
+     *         {@code -1} at the end of the source.
+     */
+    public int readAhead(Reader reader) throws IOException;
 
     public boolean hasMore();
 
+    /**
+     * Tells whether the next chars are taken from a replacement rather than from the look ahead.
+     */
+    public boolean inReplacement();
+
     public char take();
 
-    public void replaceIfExists(String token, String replacement);
+    /**
+     * Replaces the first {@code tokenLength} chars of the look ahead, which the caller has found to be a key.
+     */
+    public void replace(int tokenLength, String replacement);
+
+    /**
+     * Replaces the first {@code tokenLength} chars of the look ahead with the contents of {@code replacement}, which
+     * is closed once it has been taken completely.
+     */
+    public void replace(int tokenLength, Reader replacement) throws IOException;
+
+    /**
+     * Copies as many chars of the current replacement as possible.
+     *
+     * @return The number of chars copied, which is {@code 0} if there is no replacement (left) to take.
+     */
+    public int takeReplacement(char[] cbuf, int off, int len) throws IOException;
+
+    /**
+     * Writes the rest of the current replacement to {@code out}.
+     *
+     * @return The number of chars written, which is {@code 0} if there is no replacement.
+     */
+    public long transferReplacement(Appendable out) throws IOException;
+
+    /**
+     * Writes the first {@code len} chars of the look ahead to {@code out} and removes them.
+     */
+    public void transferLookAhead(Appendable out, int len) throws IOException;
+
+    /**
+     * Releases a replacement that is still being taken.
+     */
+    public void close() throws IOException;
+
+    /**
+     * Returns the chars read ahead from the source, which haven't been taken yet. This may be a view on the internal
+     * state, so it is only valid until the buffer is modified.
+     */
+    public CharSequence lookAhead();
 
     public String toString();
   }
@@ -144,6 +538,8 @@ public class PropertiesFilterReader extends Reader {
   static class SimpleReplacementBuffer implements ReplacementBuffer {
     private String readAheadBuff = "";
     private int bufferSize;
+    // Can only be taken in bulk
+    private Reader streamedReplacement;
 
     @Override
     public void initialize(int bufferSize) {
@@ -151,24 +547,38 @@ public class PropertiesFilterReader extends Reader {
     }
 
     @Override
-    public void readAhead(Reader reader) throws IOException {
+    public void grow(int bufferSize) {
+      this.bufferSize = Math.max(this.bufferSize, bufferSize);
+    }
+
+    @Override
+    public int readAhead(Reader reader) throws IOException {
+      if (inReplacement())
+        return 0;
+
       final int readAheadSize = bufferSize - readAheadBuff.length();
 
       if (readAheadSize < 1)
-        return;
+        return 0;
 
       final char[] buff = new char[readAheadSize];
       final int charsRead = reader.read(buff);
 
       if (charsRead == -1)
-        return;
+        return -1;
 
       this.readAheadBuff += String.valueOf(buff, 0, charsRead);
+      return charsRead;
     }
 
     @Override
     public boolean hasMore() {
-      return readAheadBuff.length() > 0;
+      return streamedReplacement != null || readAheadBuff.length() > 0;
+    }
+
+    @Override
+    public boolean inReplacement() {
+      return streamedReplacement != null;
     }
 
     @Override
@@ -179,9 +589,65 @@ public class PropertiesFilterReader extends Reader {
     }
 
     @Override
-    public void replaceIfExists(String token, String replacement) {
-      if (readAheadBuff.startsWith(token))
-        readAheadBuff = replacement + readAheadBuff.substring(token.length());
+    public void replace(int tokenLength, String replacement) {
+      readAheadBuff = replacement + readAheadBuff.substring(tokenLength);
+    }
+
+    @Override
+    public void replace(int tokenLength, Reader replacement) {
+      readAheadBuff = readAheadBuff.substring(tokenLength);
+      streamedReplacement = replacement;
+    }
+
+    @Override
+    public int takeReplacement(char[] cbuf, int off, int len) throws IOException {
+      if (streamedReplacement == null)
+        return 0;
+
+      final int charsRead = streamedReplacement.read(cbuf, off, len);
+      if (charsRead != -1)
+        return charsRead;
+
+      close();
+      return 0;
+    }
+
+    @Override
+    public long transferReplacement(Appendable out) throws IOException {
+      if (streamedReplacement == null)
+        return 0;
+
+      final char[] buff = new char[4096];
+      long count = 0;
+      int charsRead;
+      while ((charsRead = streamedReplacement.read(buff)) != -1) {
+        Appendables.write(out, buff, 0, charsRead);
+        count += charsRead;
+      }
+      close();
+
+      return count;
+    }
+
+    @Override
+    public void transferLookAhead(Appendable out, int len) throws IOException {
+      Appendables.write(out, readAheadBuff, 0, len);
+      readAheadBuff = readAheadBuff.substring(len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (streamedReplacement == null)
+        return;
+
+      final Reader r = streamedReplacement;
+      streamedReplacement = null;
+      r.close();
+    }
+
+    @Override
+    public CharSequence lookAhead() {
+      return readAheadBuff;
     }
 
     @Override
@@ -197,35 +663,54 @@ public class PropertiesFilterReader extends Reader {
   static class RingReplacementBuffer implements ReplacementBuffer {
     private String replacement;
     private int replacementPos;
+    // Can only be taken in bulk
+    private Reader streamedReplacement;
     private CharRingBuffer buffer;
+    private char[] readAheadChars;
+    // Created when a streamed replacement is transferred
+    private char[] transferChars;
 
     @Override
     public void initialize(int bufferSize) {
       buffer = new CharRingBuffer(bufferSize);
+      readAheadChars = new char[bufferSize];
     }
 
     @Override
-    public void readAhead(Reader reader) throws IOException {
-      if (inReplacement())
+    public void grow(int bufferSize) {
+      if (bufferSize <= buffer.maxSize())
         return;
 
+      final CharRingBuffer grown = new CharRingBuffer(bufferSize);
+      grown.append(buffer.toCharArray());
+      buffer = grown;
+      readAheadChars = new char[bufferSize];
+    }
+
+    @Override
+    public int readAhead(Reader reader) throws IOException {
+      if (inReplacement())
+        return 0;
+
       final int readAheadSize = buffer.maxSize() - buffer.length();
 
       if (readAheadSize < 1)
-        return;
+        return 0;
 
-      final char[] buff = new char[readAheadSize];
-      final int charsRead = reader.read(buff);
+      final int charsRead = reader.read(readAheadChars, 0, readAheadSize);
 
       if (charsRead == -1)
-        return;
+        return -1;
 
-      buffer.append(buff, 0, charsRead);
+      buffer.append(readAheadChars, 0, charsRead);
+      return charsRead;
     }
 
     @Override
     public boolean hasMore() {
-      if (inReplacement())
+      if (streamedReplacement != null)
+        return true;
+      else if (inReplacement())
         return replacement.length() - replacementPos > 0;
       else
         return buffer.length() > 0;
@@ -246,22 +731,100 @@ public class PropertiesFilterReader extends Reader {
     }
 
     @Override
-    public void replaceIfExists(String token, String replacement) {
-      if (!buffer.toString().startsWith(token))
-        return;
-
+    public void replace(int tokenLength, String replacement) {
       // Remove token from buffer
-      // TODO: Allow to take multiple chars at once
-      for (int i = 0; i < token.length(); i++)
-        buffer.take();
+      buffer.skip(tokenLength);
 
       // Populate replacement buffer
-      this.replacement = replacement;
-      this.replacementPos = 0;
+      if (!replacement.isEmpty()) {
+        this.replacement = replacement;
+        this.replacementPos = 0;
+      }
     }
 
-    private boolean inReplacement() {
-      return replacement != null;
+    @Override
+    public void replace(int tokenLength, Reader replacement) {
+      buffer.skip(tokenLength);
+      streamedReplacement = replacement;
+    }
+
+    @Override
+    public int takeReplacement(char[] cbuf, int off, int len) throws IOException {
+      if (streamedReplacement != null) {
+        // Straight from the source of the value into the caller's buffer
+        final int charsRead = streamedReplacement.read(cbuf, off, len);
+        if (charsRead != -1)
+          return charsRead;
+
+        close();
+        return 0;
+      }
+
+      if (replacement == null)
+        return 0;
+
+      final int n = Math.min(len, replacement.length() - replacementPos);
+      replacement.getChars(replacementPos, replacementPos + n, cbuf, off);
+      replacementPos += n;
+      if (replacementPos == replacement.length()) {
+        replacement = null;
+        replacementPos = 0;
+      }
+
+      return n;
+    }
+
+    @Override
+    public long transferReplacement(Appendable out) throws IOException {
+      if (streamedReplacement != null) {
+        if (transferChars == null)
+          transferChars = new char[4096];
+
+        long count = 0;
+        int charsRead;
+        while ((charsRead = streamedReplacement.read(transferChars)) != -1) {
+          Appendables.write(out, transferChars, 0, charsRead);
+          count += charsRead;
+        }
+        close();
+
+        return count;
+      }
+
+      if (replacement == null)
+        return 0;
+
+      final int n = replacement.length() - replacementPos;
+      Appendables.write(out, replacement, replacementPos, replacement.length());
+      replacement = null;
+      replacementPos = 0;
+
+      return n;
+    }
+
+    @Override
+    public void transferLookAhead(Appendable out, int len) throws IOException {
+      buffer.take(out, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (streamedReplacement == null)
+        return;
+
+      final Reader r = streamedReplacement;
+      streamedReplacement = null;
+      r.close();
+    }
+
+    @Override
+    public boolean inReplacement() {
+      return replacement != null || streamedReplacement != null;
+    }
+
+    @Override
+    public CharSequence lookAhead() {
+      return buffer;
     }
 
     @Override
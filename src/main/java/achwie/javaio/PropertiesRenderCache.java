@@ -0,0 +1,330 @@
+package achwie.javaio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>
+ * Caches the output of a {@link PropertiesFilterReader} so that rendering the same source with the same replacements
+ * a second time does not run the filter again.
+ * </p>
+ * <p>
+ * Entries are keyed by the identity of the source (the canonical path plus charset, modification time and length for
+ * files, a content hash for in-memory sources) and a fingerprint of the replacement map. Changing a file or any
+ * replacement therefore leads to a cache miss. A {@link StreamedValue} is represented by its
+ * {@link StreamedValue#fingerprint() fingerprint}, so it isn't read for that. Rendered output is held on the heap in an
+ * LRU list whose total size is bounded by the number of chars passed to the constructor.
+ * </p>
+ *
+ * <pre>
+ * final PropertiesRenderCache cache = new PropertiesRenderCache(16 * 1024 * 1024);
+ * try (Reader r = cache.open(new File(&quot;input.txt&quot;), StandardCharsets.UTF_8, props)) {
+ *   // read contents and do something
+ * }
+ * </pre>
+ */
+public class PropertiesRenderCache {
+  private final long maxChars;
+  private final LinkedHashMap<CacheKey, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Creates a cache that holds at most {@code maxChars} chars of rendered output.
+   *
+   * @param maxChars The upper bound for the sum of the lengths of all cached renderings.
+   */
+  public PropertiesRenderCache(long maxChars) {
+    if (maxChars < 0)
+      throw new IllegalArgumentException("Cache size must not be negative: " + maxChars);
+
+    this.maxChars = maxChars;
+  }
+
+  /**
+   * Returns a reader on the rendered contents of {@code file}, rendering it only if there is no up-to-date cache entry.
+   *
+   * @param file The file to render.
+   * @param charset The charset of the file.
+   * @param replacements The replacement map as accepted by {@link PropertiesFilterReader}.
+   * @return A reader on the rendered content.
+   * @throws IOException If the file could not be read.
+   */
+  public Reader open(File file, Charset charset, Map<Object, Object> replacements) throws IOException {
+    return new StringReader(render(file, charset, replacements));
+  }
+
+  /**
+   * Returns the rendered contents of {@code file}, rendering it only if there is no up-to-date cache entry.
+   *
+   * @param file The file to render.
+   * @param charset The charset of the file.
+   * @param replacements The replacement map as accepted by {@link PropertiesFilterReader}.
+   * @return The rendered content.
+   * @throws IOException If the file could not be read.
+   */
+  public String render(File file, Charset charset, Map<Object, Object> replacements) throws IOException {
+    final String sourceId = "file:" + file.getCanonicalPath();
+    final long lastModified = file.lastModified();
+    final CacheKey key = new CacheKey(sourceId, charset.name(), lastModified, file.length(),
+        fingerprint(replacements));
+
+    final String cached = lookup(key);
+    if (cached != null)
+      return cached;
+
+    final String rendered;
+    try (Reader r = new PropertiesFilterReader(new InputStreamReader(new FileInputStream(file), charset),
+        replacements)) {
+      rendered = readToString(r);
+    }
+
+    // Don't cache what might be a mixture of two versions of the file
+    if (file.lastModified() == lastModified)
+      store(key, rendered);
+
+    return rendered;
+  }
+
+  /**
+   * Returns the rendered form of an in-memory source, rendering it only if the same content was not rendered with the
+   * same replacements before.
+   *
+   * @param source The content to render.
+   * @param replacements The replacement map as accepted by {@link PropertiesFilterReader}.
+   * @return The rendered content.
+   */
+  public String render(CharSequence source, Map<Object, Object> replacements) {
+    final Digest digest = new Digest();
+    digest.update(source);
+    final CacheKey key = new CacheKey("content:" + digest.finish(), "", 0, 0, fingerprint(replacements));
+
+    final String cached = lookup(key);
+    if (cached != null)
+      return cached;
+
+    final String rendered = InMemoryReplacer.replaceAll(source, replacements);
+    store(key, rendered);
+
+    return rendered;
+  }
+
+  /**
+   * Removes all cached renderings of {@code file}.
+   *
+   * @param file The file whose entries should be dropped.
+   * @throws IOException If the canonical path of the file could not be determined.
+   */
+  public synchronized void invalidate(File file) throws IOException {
+    final String sourceId = "file:" + file.getCanonicalPath();
+    for (Iterator<Entry<CacheKey, String>> it = entries.entrySet().iterator(); it.hasNext();) {
+      final Entry<CacheKey, String> e = it.next();
+      if (e.getKey().sourceId.equals(sourceId)) {
+        size -= e.getValue().length();
+        it.remove();
+      }
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    size = 0;
+  }
+
+  public synchronized long hitCount() {
+    return hits;
+  }
+
+  public synchronized long missCount() {
+    return misses;
+  }
+
+  public synchronized long evictionCount() {
+    return evictions;
+  }
+
+  public synchronized int entryCount() {
+    return entries.size();
+  }
+
+  /**
+   * @return The number of chars currently held by the cache.
+   */
+  public synchronized long size() {
+    return size;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("PropertiesRenderCache[entries: %d, size: %d/%d chars, hits: %d, misses: %d, evictions: %d]",
+        entries.size(), size, maxChars, hits, misses, evictions);
+  }
+
+  private synchronized String lookup(CacheKey key) {
+    final String rendered = entries.get(key);
+    if (rendered != null)
+      hits++;
+    else
+      misses++;
+
+    return rendered;
+  }
+
+  private synchronized void store(CacheKey key, String rendered) {
+    if (rendered.length() > maxChars)
+      return;
+
+    // Older versions of the same source can never be hit again
+    for (Iterator<Entry<CacheKey, String>> it = entries.entrySet().iterator(); it.hasNext();) {
+      final Entry<CacheKey, String> e = it.next();
+      if (e.getKey().sourceId.equals(key.sourceId) && !e.getKey().isSameVersion(key)) {
+        size -= e.getValue().length();
+        it.remove();
+      }
+    }
+
+    final String previous = entries.put(key, rendered);
+    if (previous != null)
+      size -= previous.length();
+    size += rendered.length();
+
+    // Evict least recently used entries
+    for (Iterator<String> it = entries.values().iterator(); size > maxChars && it.hasNext();) {
+      size -= it.next().length();
+      it.remove();
+      evictions++;
+    }
+  }
+
+  private String fingerprint(Map<Object, Object> replacements) {
+    final List<String[]> pairs = new ArrayList<>(replacements.size());
+    for (Entry<Object, Object> e : replacements.entrySet()) {
+      // Streamed values aren't read, and the prefix keeps them apart from a string that equals their fingerprint
+      final Object value = e.getValue();
+      final String fingerprint = (value instanceof StreamedValue) ? "\0streamed:" + ((StreamedValue) value)
+          .fingerprint() : String.valueOf(value);
+      pairs.add(new String[] { e.getKey().toString(), fingerprint });
+    }
+
+    Collections.sort(pairs, new Comparator<String[]>() {
+      @Override
+      public int compare(String[] a, String[] b) {
+        return a[0].compareTo(b[0]);
+      }
+    });
+
+    final Digest digest = new Digest();
+    for (String[] pair : pairs) {
+      digest.update(pair[0]);
+      digest.update(pair[1]);
+    }
+
+    return digest.finish();
+  }
+
+  private String readToString(Reader r) throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    final char[] buff = new char[4096];
+    int len;
+    while ((len = r.read(buff)) != -1)
+      sb.append(buff, 0, len);
+
+    return sb.toString();
+  }
+
+  private static class CacheKey {
+    private final String sourceId;
+    private final String charset;
+    private final long lastModified;
+    private final long length;
+    private final String replacementsFingerprint;
+
+    public CacheKey(String sourceId, String charset, long lastModified, long length, String replacementsFingerprint) {
+      this.sourceId = sourceId;
+      this.charset = charset;
+      this.lastModified = lastModified;
+      this.length = length;
+      this.replacementsFingerprint = replacementsFingerprint;
+    }
+
+    public boolean isSameVersion(CacheKey other) {
+      return lastModified == other.lastModified && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = sourceId.hashCode();
+      hash = hash * 31 + charset.hashCode();
+      hash = hash * 31 + (int) (lastModified ^ (lastModified >>> 32));
+      hash = hash * 31 + (int) (length ^ (length >>> 32));
+      return hash * 31 + replacementsFingerprint.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof CacheKey))
+        return false;
+
+      final CacheKey other = (CacheKey) obj;
+      return isSameVersion(other) && sourceId.equals(other.sourceId) && charset.equals(other.charset)
+          && replacementsFingerprint.equals(other.replacementsFingerprint);
+    }
+  }
+
+  /**
+   * Hashes a sequence of strings. Every string is prefixed with its length, so {@code ["ab", "c"]} and
+   * {@code ["a", "bc"]} don't collide.
+   */
+  private static class Digest {
+    private final MessageDigest md;
+    private final byte[] scratch = new byte[4096];
+
+    public Digest() {
+      try {
+        md = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 is not available", e);
+      }
+    }
+
+    public void update(CharSequence str) {
+      final int len = str.length();
+      md.update(new byte[] { (byte) (len >>> 24), (byte) (len >>> 16), (byte) (len >>> 8), (byte) len });
+
+      for (int i = 0; i < len;) {
+        int n = 0;
+        for (; n < scratch.length && i < len; i++) {
+          final char ch = str.charAt(i);
+          scratch[n++] = (byte) (ch >>> 8);
+          scratch[n++] = (byte) ch;
+        }
+        md.update(scratch, 0, n);
+      }
+    }
+
+    public String finish() {
+      final StringBuilder sb = new StringBuilder();
+      for (byte b : md.digest())
+        sb.append(String.format("%02x", b & 0xff));
+
+      return sb.toString();
+    }
+  }
+}
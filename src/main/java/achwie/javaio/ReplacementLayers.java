@@ -0,0 +1,192 @@
+package achwie.javaio;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * <p>
+ * Resolves values from several layers (like defaults, environment, tenant and request overrides) without merging them
+ * into a new map and building a new matcher for every combination. The keys of all layers are compiled once; each
+ * layer is then resolved to the key ids of that matcher, so a large static layer is resolved once and a small
+ * per-request layer costs only the lookups of its own keys.
+ * </p>
+ *
+ * <pre>
+ * final ReplacementLayers layers = new ReplacementLayers(allKeys);
+ * final ReplacementLayers.Layer defaults = layers.layer(defaultProps);
+ * final ReplacementLayers.Layer environment = layers.layer(envProps);
+ * // Per request
+ * final Replacements replacements = layers.stack(layers.layer(requestProps), environment, defaults);
+ * try (Reader r = new PropertiesFilterReader(new FileReader(&quot;input.txt&quot;), replacements)) {
+ *   // read contents and do something
+ * }
+ * </pre>
+ *
+ * <p>
+ * Layers are snapshots of their maps. A key that no layer of a stack has a value for is left in the output as it is.
+ * </p>
+ */
+public class ReplacementLayers {
+  // Layers with at least keyCount / DENSE_RATIO values are stored in an array indexed by key id
+  private static final int DENSE_RATIO = 8;
+  private final KeyMatcher matcher;
+
+  /**
+   * @param keys The keys of all layers.
+   */
+  public ReplacementLayers(Collection<?> keys) {
+    this(KeyAnalysis.of(keys).createMatcher(MatchStrategy.AUTO));
+  }
+
+  /**
+   * @param matcher The matcher that finds the keys of all layers.
+   */
+  public ReplacementLayers(KeyMatcher matcher) {
+    this.matcher = matcher;
+  }
+
+  public KeyMatcher matcher() {
+    return matcher;
+  }
+
+  /**
+   * @param key A key.
+   * @return The id of the key in the {@link #matcher()} or {@code -1}, if it isn't one of the keys.
+   */
+  public int keyId(Object key) {
+    final String str = key.toString();
+    final int keyId = str.isEmpty() ? -1 : matcher.match(str, 0);
+
+    return (keyId != -1 && matcher.keyLength(keyId) == str.length()) ? keyId : -1;
+  }
+
+  /**
+   * Resolves the values of a map to the key ids. Entries whose key isn't one of the keys are ignored, as they would
+   * never be found in the text.
+   *
+   * @param values The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements.
+   * @return The layer.
+   */
+  public Layer layer(Map<?, ?> values) {
+    int[] keyIds = new int[values.size()];
+    Object[] resolved = new Object[values.size()];
+    int size = 0;
+    for (Entry<?, ?> e : values.entrySet()) {
+      final int keyId = keyId(e.getKey());
+      if (keyId != -1 && e.getValue() != null) {
+        keyIds[size] = keyId;
+        resolved[size++] = e.getValue();
+      }
+    }
+
+    if (size >= matcher.keyCount() / DENSE_RATIO) {
+      final Object[] dense = new Object[matcher.keyCount()];
+      for (int i = 0; i < size; i++)
+        dense[keyIds[i]] = resolved[i];
+
+      return new Layer(this, null, dense);
+    }
+
+    // Sort by key id for the binary search
+    final long[] order = new long[size];
+    for (int i = 0; i < size; i++)
+      order[i] = ((long) keyIds[i] << 32) | i;
+    Arrays.sort(order);
+
+    final int[] sortedIds = new int[size];
+    final Object[] sortedValues = new Object[size];
+    for (int i = 0; i < size; i++) {
+      sortedIds[i] = (int) (order[i] >>> 32);
+      sortedValues[i] = resolved[(int) order[i]];
+    }
+
+    return new Layer(this, sortedIds, sortedValues);
+  }
+
+  /**
+   * Combines layers into the replacements for a {@link PropertiesFilterReader}.
+   *
+   * @param layers The layers, the one with the highest priority first.
+   * @return The replacements.
+   * @throws IllegalArgumentException If a layer was created by other {@code ReplacementLayers}.
+   */
+  public Replacements stack(Layer... layers) {
+    for (Layer layer : layers)
+      if (layer.owner != this)
+        throw new IllegalArgumentException("Layer belongs to a different key set: " + layer);
+
+    return new Stack(matcher, layers.clone());
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ReplacementLayers[matcher: %s]", matcher);
+  }
+
+  /**
+   * The values of a single layer, resolved to key ids.
+   */
+  public static class Layer {
+    private final ReplacementLayers owner;
+    // Sorted key ids of a sparse layer or null, if the values are indexed by key id
+    private final int[] keyIds;
+    private final Object[] values;
+
+    private Layer(ReplacementLayers owner, int[] keyIds, Object[] values) {
+      this.owner = owner;
+      this.keyIds = keyIds;
+      this.values = values;
+    }
+
+    /**
+     * @return The value of the key or {@code null}, if the layer doesn't have one.
+     */
+    public Object valueOf(int keyId) {
+      if (keyIds == null)
+        return values[keyId];
+
+      final int index = Arrays.binarySearch(keyIds, keyId);
+      return (index >= 0) ? values[index] : null;
+    }
+
+    @Override
+    public String toString() {
+      if (keyIds == null)
+        return String.format("Layer[dense, slots: %d]", values.length);
+      else
+        return String.format("Layer[sparse, values: %d]", values.length);
+    }
+  }
+
+  /**
+   * Looks up the values in the layers in order of priority.
+   */
+  private static class Stack implements Replacements {
+    private final KeyMatcher matcher;
+    private final Layer[] layers;
+
+    public Stack(KeyMatcher matcher, Layer[] layers) {
+      this.matcher = matcher;
+      this.layers = layers;
+    }
+
+    @Override
+    public KeyMatcher matcher() {
+      return matcher;
+    }
+
+    @Override
+    public Object valueOf(int keyId) {
+      for (Layer layer : layers) {
+        final Object value = layer.valueOf(keyId);
+        if (value != null)
+          return value;
+      }
+
+      return matcher.key(keyId);
+    }
+  }
+}
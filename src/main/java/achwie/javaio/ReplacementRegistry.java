@@ -0,0 +1,211 @@
+package achwie.javaio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>
+ * Holds replacements that change at runtime. Every change leads to a new immutable {@link Snapshot} (with its own
+ * search tree), which is built in the background and then published atomically. Readers never see a half-updated
+ * snapshot and never have to lock anything to use one.
+ * </p>
+ * <p>
+ * A {@link PropertiesFilterReader} created with a registry switches to the latest snapshot at the beginning of each
+ * {@code read()} call. Changes made in quick succession are combined into a single rebuild.
+ * </p>
+ *
+ * <pre>
+ * final ReplacementRegistry registry = new ReplacementRegistry(props);
+ * final PropertiesFilterReader filterReader = new PropertiesFilterReader(new FileReader(&quot;input.txt&quot;), registry);
+ * // ... later, from another thread
+ * registry.put(&quot;${endpoint}&quot;, &quot;https://backup.example.com&quot;);
+ * </pre>
+ */
+public class ReplacementRegistry {
+  private final Executor executor;
+  private final Map<Object, Object> pending = new HashMap<>();
+  private final AtomicReference<Snapshot> current = new AtomicReference<>();
+  private long modCount;
+  private boolean rebuildScheduled;
+
+  /**
+   * Creates a registry that rebuilds snapshots on a shared daemon thread.
+   *
+   * @param initial The initial replacements.
+   */
+  public ReplacementRegistry(Map<?, ?> initial) {
+    this(initial, DefaultExecutorHolder.EXECUTOR);
+  }
+
+  /**
+   * @param initial The initial replacements.
+   * @param executor The executor that rebuilds snapshots after changes.
+   */
+  public ReplacementRegistry(Map<?, ?> initial, Executor executor) {
+    this.executor = executor;
+    this.pending.putAll(initial);
+    this.current.set(new Snapshot(pending, 0));
+  }
+
+  /**
+   * @return The latest published snapshot.
+   */
+  public Snapshot snapshot() {
+    return current.get();
+  }
+
+  /**
+   * @param key The key.
+   * @param value The value, or {@code null} to leave the key in the text like {@link #remove(Object)}.
+   */
+  public void put(Object key, Object value) {
+    synchronized (this) {
+      pending.put(key, value);
+      modified();
+    }
+  }
+
+  public void putAll(Map<?, ?> replacements) {
+    synchronized (this) {
+      pending.putAll(replacements);
+      modified();
+    }
+  }
+
+  public void remove(Object key) {
+    synchronized (this) {
+      pending.remove(key);
+      modified();
+    }
+  }
+
+  /**
+   * Replaces all replacements at once.
+   *
+   * @param replacements The new replacements.
+   */
+  public void replaceAll(Map<?, ?> replacements) {
+    synchronized (this) {
+      pending.clear();
+      pending.putAll(replacements);
+      modified();
+    }
+  }
+
+  /**
+   * Builds a snapshot of the current replacements in the calling thread and publishes it, unless a newer one has been
+   * published in the meantime. Only copying the replacements blocks changes, not building the search tree.
+   *
+   * @return The latest snapshot after the rebuild.
+   */
+  public Snapshot rebuild() {
+    final Map<Object, Object> replacements;
+    final long version;
+    synchronized (this) {
+      rebuildScheduled = false;
+      replacements = new HashMap<>(pending);
+      version = modCount;
+    }
+
+    publish(new Snapshot(replacements, version));
+
+    return current.get();
+  }
+
+  private void modified() {
+    modCount++;
+
+    if (rebuildScheduled)
+      return;
+
+    rebuildScheduled = true;
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          rebuild();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Otherwise no later change would be rebuilt either
+      rebuildScheduled = false;
+      throw e;
+    }
+  }
+
+  private void publish(Snapshot snapshot) {
+    while (true) {
+      final Snapshot published = current.get();
+      if (published.version >= snapshot.version || current.compareAndSet(published, snapshot))
+        return;
+    }
+  }
+
+  /**
+   * An immutable state of the replacements.
+   */
+  public static class Snapshot implements Replacements {
+    private final StringListSearchTree matcher;
+    private final Object[] values;
+    private final long version;
+
+    private Snapshot(Map<Object, Object> replacements, long version) {
+      final Map<String, Object> byKey = new HashMap<>();
+      for (Entry<Object, Object> e : replacements.entrySet())
+        if (e.getValue() != null)
+          byKey.put(e.getKey().toString(), e.getValue());
+
+      final List<String> sortedKeys = new ArrayList<>(byKey.keySet());
+      Collections.sort(sortedKeys);
+
+      this.matcher = new StringListSearchTree(sortedKeys);
+      this.values = new Object[matcher.keyCount()];
+      for (int i = 0; i < values.length; i++)
+        values[i] = byKey.get(matcher.key(i));
+      this.version = version;
+    }
+
+    @Override
+    public KeyMatcher matcher() {
+      return matcher;
+    }
+
+    @Override
+    public Object valueOf(int keyId) {
+      return values[keyId];
+    }
+
+    /**
+     * @return The number of changes to the registry this snapshot includes.
+     */
+    public long version() {
+      return version;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Snapshot[version: %d, keys: %d]", version, values.length);
+    }
+  }
+
+  private static class DefaultExecutorHolder {
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        final Thread t = new Thread(r, "ReplacementRegistry-rebuild");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+}
@@ -0,0 +1,18 @@
+package achwie.javaio;
+
+/**
+ * The keys to search for together with their replacements, as used by the {@link PropertiesFilterReader}. The values
+ * are looked up by the key ids of the {@link KeyMatcher}.
+ */
+public interface Replacements {
+  /**
+   * @return The matcher that finds the keys.
+   */
+  public KeyMatcher matcher();
+
+  /**
+   * @param keyId The id of a key of {@link #matcher()}.
+   * @return The replacement for the key. Its {@code toString()} is written to the output.
+   */
+  public Object valueOf(int keyId);
+}
@@ -0,0 +1,404 @@
+package achwie.javaio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Gives random access to the output a {@link PropertiesFilterReader} would produce for a source. When it is created,
+ * the source is scanned once (without producing any output) and a sparse index of <em>checkpoints</em> is recorded:
+ * roughly every {@code checkpointInterval} output chars, the position in the source and a possibly pending replacement
+ * is remembered. {@link #openAt(long)} starts at the closest checkpoint before the requested output offset, so reading
+ * a range costs about as much as the range itself, no matter how far into the output it starts.
+ * </p>
+ * <p>
+ * All offsets are counted in chars of the rendered output. For files, the index also stores the byte position of each
+ * checkpoint so the file can be decoded starting from there, which only works for charsets without a byte order mark
+ * or shift states (e.g. UTF-8 or ISO-8859-1). A {@link StreamedValue} is measured once while indexing, and when a
+ * checkpoint lies inside it, it is skipped to that position, so it is never held in memory.
+ * </p>
+ * <p>
+ * The matcher for the keys is built once, used for indexing and shared by every reader {@link #openAt(long)} returns.
+ * The index is only valid as long as neither the source nor the replacements change.
+ * </p>
+ */
+public class SeekablePropertiesSource {
+  private final Opener opener;
+  private final Replacements replacements;
+  private final long length;
+  private final int checkpointCount;
+  private final long[] outputOffsets;
+  private final long[] inputOffsets;
+  private final long[] inputByteOffsets;
+  private final int[] pendingKeyIds;
+  private final long[] pendingPositions;
+
+  private SeekablePropertiesSource(Opener opener, Indexer indexer) {
+    this.opener = opener;
+    this.replacements = indexer.replacements;
+    this.length = indexer.outputOffset;
+    this.checkpointCount = indexer.count;
+    this.outputOffsets = indexer.outputOffsets;
+    this.inputOffsets = indexer.inputOffsets;
+    this.inputByteOffsets = indexer.inputByteOffsets;
+    this.pendingKeyIds = indexer.pendingKeyIds;
+    this.pendingPositions = indexer.pendingPositions;
+  }
+
+  /**
+   * Indexes a file.
+   *
+   * @param file The file to read from.
+   * @param charset The charset of the file. It must not depend on state like a byte order mark.
+   * @param replacements The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements.
+   * @param checkpointInterval The number of output chars between two checkpoints.
+   * @return The indexed source.
+   * @throws IOException If the file could not be read.
+   */
+  public static SeekablePropertiesSource forFile(final File file, final Charset charset,
+      Map<Object, Object> replacements, int checkpointInterval) throws IOException {
+    final Indexer indexer = new Indexer(MapReplacements.of(replacements), checkpointInterval, charset.newEncoder());
+    try (Reader r = new InputStreamReader(new FileInputStream(file), charset)) {
+      indexer.index(r);
+    }
+
+    return new SeekablePropertiesSource(new Opener() {
+      @Override
+      public Reader openAt(long charOffset, long byteOffset) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+          in.getChannel().position(byteOffset);
+          return new InputStreamReader(in, charset);
+        } catch (IOException e) {
+          in.close();
+          throw e;
+        }
+      }
+    }, indexer);
+  }
+
+  /**
+   * Indexes an in-memory source.
+   *
+   * @param source The source.
+   * @param replacements The replacement map, whereas the keys are the search strings and the values the according
+   *          replacements.
+   * @param checkpointInterval The number of output chars between two checkpoints.
+   * @return The indexed source.
+   */
+  public static SeekablePropertiesSource forString(final String source, Map<Object, Object> replacements,
+      int checkpointInterval) {
+    final Indexer indexer = new Indexer(MapReplacements.of(replacements), checkpointInterval, null);
+    try {
+      indexer.index(new StringReader(source));
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not index in-memory source", e);
+    }
+
+    return new SeekablePropertiesSource(new Opener() {
+      @Override
+      public Reader openAt(long charOffset, long byteOffset) throws IOException {
+        final StringReader r = new StringReader(source);
+        r.skip(charOffset);
+        return r;
+      }
+    }, indexer);
+  }
+
+  /**
+   * @return The number of chars in the rendered output.
+   */
+  public long length() {
+    return length;
+  }
+
+  public int checkpointCount() {
+    return checkpointCount;
+  }
+
+  /**
+   * Returns a reader on the rendered output, starting at {@code outputOffset}.
+   *
+   * @param outputOffset The position in the rendered output to start at.
+   * @return The reader. It must be closed by the caller.
+   * @throws IOException If the source could not be opened.
+   */
+  public Reader openAt(long outputOffset) throws IOException {
+    if (outputOffset < 0 || outputOffset > length)
+      throw new IndexOutOfBoundsException(String.format("Could not seek to %d in an output of %d chars.",
+          outputOffset, length));
+
+    int cp = Arrays.binarySearch(outputOffsets, 0, checkpointCount, outputOffset);
+    if (cp < 0)
+      cp = -cp - 2; // Closest checkpoint before the offset
+
+    final int pendingKeyId = pendingKeyIds[cp];
+    final Reader head = (pendingKeyId != -1) ? openValueAt(replacements.valueOf(pendingKeyId), pendingPositions[cp])
+        : null;
+    final Reader source;
+    try {
+      source = opener.openAt(inputOffsets[cp], inputByteOffsets[cp]);
+    } catch (IOException | RuntimeException e) {
+      if (head != null)
+        head.close();
+      throw e;
+    }
+    final Reader r = new HeadReader(head, new PropertiesFilterReader(source, replacements));
+
+    long toSkip = outputOffset - outputOffsets[cp];
+    while (toSkip > 0) {
+      final long skipped = r.skip(toSkip);
+      if (skipped == 0)
+        break;
+      toSkip -= skipped;
+    }
+
+    return r;
+  }
+
+  /**
+   * Opens the rest of a value. A {@link StreamedValue} is skipped up to the position instead of being read into memory.
+   */
+  private static Reader openValueAt(Object value, long pos) throws IOException {
+    if (!(value instanceof StreamedValue))
+      return new StringReader(value.toString().substring((int) pos));
+
+    final Reader r = ((StreamedValue) value).open();
+    long toSkip = pos;
+    while (toSkip > 0) {
+      final long skipped = r.skip(toSkip);
+      if (skipped == 0)
+        break;
+      toSkip -= skipped;
+    }
+
+    return r;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SeekablePropertiesSource[length: %d chars, checkpoints: %d]", length, checkpointCount);
+  }
+
+  /**
+   * Opens the source at a checkpoint.
+   */
+  private static interface Opener {
+    public Reader openAt(long charOffset, long byteOffset) throws IOException;
+  }
+
+  /**
+   * Emits the rest of a pending replacement before the output of the filter.
+   */
+  private static class HeadReader extends Reader {
+    // The rest of the pending replacement, or null once it has been read
+    private Reader head;
+    private final Reader tail;
+
+    public HeadReader(Reader head, Reader tail) {
+      this.head = head;
+      this.tail = tail;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (head != null) {
+        final int charsRead = head.read(cbuf, off, len);
+        if (charsRead != -1)
+          return charsRead;
+
+        head.close();
+        head = null;
+      }
+
+      return tail.read(cbuf, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (head != null)
+          head.close();
+      } finally {
+        tail.close();
+      }
+    }
+  }
+
+  /**
+   * Performs the index-only pass. It mirrors the matching of the {@link PropertiesFilterReader} with the same matcher:
+   * at each position the key found by the matcher is replaced and the replacement is never searched again.
+   */
+  private static class Indexer {
+    private final Replacements replacements;
+    private final KeyMatcher matcher;
+    private final int lookAhead;
+    private final int interval;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer encoded;
+
+    private char[] window;
+    private int pos;
+    private int end;
+    private long windowOffset;
+    // Bytes of the input up to window position byteCountPos
+    private int byteCountPos;
+    private long byteCount;
+
+    private long outputOffset;
+    private long nextCheckpoint;
+    private int count;
+    private long[] outputOffsets = new long[16];
+    private long[] inputOffsets = new long[16];
+    private long[] inputByteOffsets = new long[16];
+    private int[] pendingKeyIds = new int[16];
+    private long[] pendingPositions = new long[16];
+    // Lengths of the streamed values, which are only read once
+    private final Map<Integer, Long> streamedLengths = new HashMap<>();
+
+    public Indexer(Replacements replacements, int interval, CharsetEncoder encoder) {
+      if (interval < 1)
+        throw new IllegalArgumentException("Checkpoint interval must be positive: " + interval);
+
+      this.replacements = replacements;
+      this.matcher = replacements.matcher();
+      // Without keys, the window still has to hold the next char
+      this.lookAhead = Math.max(1, matcher.maxKeyLength());
+      this.interval = interval;
+      this.encoder = encoder;
+      this.encoded = (encoder != null) ? ByteBuffer.allocate(4096) : null;
+      this.window = new char[Math.max(8192, 2 * lookAhead)];
+    }
+
+    public void index(Reader r) throws IOException {
+      boolean eof = false;
+      CharBuffer view = CharBuffer.wrap(window, 0, 0);
+
+      while (true) {
+        if (!eof && end - pos < lookAhead) {
+          eof = fill(r);
+          view = CharBuffer.wrap(window, 0, end);
+        }
+
+        if (pos == end)
+          break;
+
+        if (outputOffset >= nextCheckpoint && !Character.isLowSurrogate(window[pos]))
+          addCheckpoint(outputOffset, pos, -1, 0);
+
+        final int keyId = matcher.match(view, pos);
+        if (keyId == -1 || matcher.keyLength(keyId) == 0) {
+          pos++;
+          outputOffset++;
+          continue;
+        }
+
+        final long valueLength = valueLength(keyId);
+        pos += matcher.keyLength(keyId);
+
+        // Checkpoints in the middle of the replacement
+        while (nextCheckpoint < outputOffset + valueLength && !Character.isHighSurrogate(window[pos - 1])) {
+          final long checkpoint = Math.max(nextCheckpoint, outputOffset);
+          addCheckpoint(checkpoint, pos, keyId, checkpoint - outputOffset);
+        }
+        outputOffset += valueLength;
+      }
+
+      if (count == 0)
+        addCheckpoint(0, 0, -1, 0);
+    }
+
+    private boolean fill(Reader r) throws IOException {
+      // Bytes must be counted before the chars are dropped, but a surrogate pair can't be split for that
+      int keep = pos;
+      if (encoder != null) {
+        if (keep > 0 && Character.isHighSurrogate(window[keep - 1]))
+          keep--;
+        bytesUpTo(keep);
+      }
+
+      System.arraycopy(window, keep, window, 0, end - keep);
+      windowOffset += keep;
+      pos -= keep;
+      end -= keep;
+      byteCountPos -= keep;
+
+      while (end < window.length) {
+        final int charsRead = r.read(window, end, window.length - end);
+        if (charsRead == -1)
+          return true;
+        end += charsRead;
+      }
+
+      return false;
+    }
+
+    private long valueLength(int keyId) throws IOException {
+      final Object value = replacements.valueOf(keyId);
+      if (!(value instanceof StreamedValue))
+        return value.toString().length();
+
+      Long length = streamedLengths.get(keyId);
+      if (length == null) {
+        length = ((StreamedValue) value).length();
+        streamedLengths.put(keyId, length);
+      }
+
+      return length;
+    }
+
+    private void addCheckpoint(long output, int inputPos, int pendingKeyId, long pendingPos) throws IOException {
+      if (count == outputOffsets.length) {
+        final int newSize = count * 2;
+        outputOffsets = Arrays.copyOf(outputOffsets, newSize);
+        inputOffsets = Arrays.copyOf(inputOffsets, newSize);
+        inputByteOffsets = Arrays.copyOf(inputByteOffsets, newSize);
+        pendingKeyIds = Arrays.copyOf(pendingKeyIds, newSize);
+        pendingPositions = Arrays.copyOf(pendingPositions, newSize);
+      }
+
+      outputOffsets[count] = output;
+      inputOffsets[count] = windowOffset + inputPos;
+      inputByteOffsets[count] = (encoder != null) ? bytesUpTo(inputPos) : -1;
+      pendingKeyIds[count] = pendingKeyId;
+      pendingPositions[count] = pendingPos;
+      count++;
+
+      nextCheckpoint = (output / interval + 1) * interval;
+    }
+
+    private long bytesUpTo(int windowPos) throws IOException {
+      if (windowPos <= byteCountPos)
+        return byteCount;
+
+      final CharBuffer chars = CharBuffer.wrap(window, byteCountPos, windowPos - byteCountPos);
+      encoder.reset();
+      while (true) {
+        final CoderResult result = encoder.encode(chars, encoded, true);
+        byteCount += encoded.position();
+        encoded.clear();
+
+        if (result.isUnderflow())
+          break;
+        if (result.isError())
+          result.throwException();
+      }
+
+      byteCountPos = windowPos;
+      return byteCount;
+    }
+  }
+}
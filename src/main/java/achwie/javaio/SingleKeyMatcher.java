@@ -0,0 +1,68 @@
+package achwie.javaio;
+
+/**
+ * Finds a single key by comparing it directly with the text.
+ */
+class SingleKeyMatcher implements KeyMatcher {
+  private final String key;
+
+  public SingleKeyMatcher(String key) {
+    if (key.isEmpty())
+      throw new IllegalArgumentException("Key must not be empty");
+
+    this.key = key;
+  }
+
+  @Override
+  public int match(CharSequence str, int offset) {
+    if (offset + key.length() > str.length())
+      return -1;
+
+    for (int i = 0; i < key.length(); i++)
+      if (str.charAt(offset + i) != key.charAt(i))
+        return -1;
+
+    return 0;
+  }
+
+  @Override
+  public boolean isKeyPrefix(CharSequence str, int offset) {
+    final int len = str.length() - offset;
+    if (len >= key.length())
+      return false;
+
+    for (int i = 0; i < len; i++)
+      if (str.charAt(offset + i) != key.charAt(i))
+        return false;
+
+    return true;
+  }
+
+  @Override
+  public String key(int id) {
+    if (id != 0)
+      throw new IndexOutOfBoundsException("Unknown key id: " + id);
+
+    return key;
+  }
+
+  @Override
+  public int keyLength(int id) {
+    return key(id).length();
+  }
+
+  @Override
+  public int keyCount() {
+    return 1;
+  }
+
+  @Override
+  public int maxKeyLength() {
+    return key.length();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SingleKeyMatcher[key: <%s>]", key);
+  }
+}
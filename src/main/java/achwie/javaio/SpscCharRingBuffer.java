@@ -0,0 +1,268 @@
+package achwie.javaio;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * A bounded buffer of chars that hands chars from exactly one producer thread to exactly one consumer thread without
+ * locks. The producer only writes the tail, the consumer only writes the head; each side publishes its index with an
+ * ordered store and caches the index of the other side, so it only reads the shared index when the cached one doesn't
+ * allow it to go on. Both indices live on their own cache line, so the threads don't slow each other down by writing
+ * to the same line.
+ * </p>
+ * <p>
+ * Chars are published and consumed in ranges (at most two array copies per call). When the buffer is full or empty, a
+ * blocking call waits according to its {@link WaitStrategy}.
+ * </p>
+ */
+public class SpscCharRingBuffer {
+  /**
+   * How a blocked producer or consumer waits for the other side.
+   */
+  public static enum WaitStrategy {
+    /**
+     * Keeps checking, which has the lowest latency but burns a core. Only use it if both threads have a core of their
+     * own, otherwise the waiting thread keeps the other one from making progress.
+     */
+    SPIN,
+
+    /**
+     * Yields the processor between checks.
+     */
+    YIELD,
+
+    /**
+     * Parks the thread until the other side signals it, which is the cheapest one for long waits.
+     */
+    PARK
+  }
+
+  private final char[] buffer;
+  private final int mask;
+  private final WaitStrategy waitStrategy;
+  // Consumer side: the next index to read and the tail as last seen by the consumer
+  private final Sequence head = new Sequence();
+  // Producer side: the next index to write and the head as last seen by the producer
+  private final Sequence tail = new Sequence();
+  private volatile boolean closed;
+  private volatile Thread waitingConsumer;
+  private volatile Thread waitingProducer;
+
+  /**
+   * @param capacity The number of chars the buffer can hold, rounded up to the next power of two.
+   * @param waitStrategy How blocking calls wait.
+   */
+  public SpscCharRingBuffer(int capacity, WaitStrategy waitStrategy) {
+    if (capacity < 1 || capacity > 1 << 30)
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+
+    int size = 1;
+    while (size < capacity)
+      size <<= 1;
+
+    this.buffer = new char[size];
+    this.mask = size - 1;
+    this.waitStrategy = waitStrategy;
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /**
+   * @return The number of chars that have been published, but not consumed yet.
+   */
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  /**
+   * Publishes as many chars as fit into the buffer. Must only be called by the producer.
+   *
+   * @return The number of chars published, which is {@code 0} if the buffer is full.
+   */
+  public int offer(char[] src, int off, int len) {
+    if (closed)
+      throw new IllegalStateException("Buffer has been closed");
+
+    final long t = tail.value;
+    long free = buffer.length - (t - tail.cached);
+    if (free < len) {
+      tail.cached = head.get();
+      free = buffer.length - (t - tail.cached);
+      if (free == 0)
+        return 0;
+    }
+
+    final int n = (int) Math.min(free, len);
+    final int index = (int) (t & mask);
+    final int untilEnd = Math.min(n, buffer.length - index);
+    System.arraycopy(src, off, buffer, index, untilEnd);
+    System.arraycopy(src, off + untilEnd, buffer, 0, n - untilEnd);
+
+    publish(tail, t + n);
+    signal(waitingConsumer);
+
+    return n;
+  }
+
+  /**
+   * Publishes all chars, waiting for space as needed. Must only be called by the producer.
+   *
+   * @throws InterruptedException If the producer was interrupted while waiting.
+   */
+  public void put(char[] src, int off, int len) throws InterruptedException {
+    int idle = 0;
+    while (len > 0) {
+      final int n = offer(src, off, len);
+      if (n > 0) {
+        off += n;
+        len -= n;
+        idle = 0;
+      } else {
+        idle = await(idle, false);
+      }
+    }
+  }
+
+  /**
+   * Tells the consumer that no more chars will follow. Must only be called by the producer.
+   */
+  public void close() {
+    closed = true;
+    signal(waitingConsumer);
+  }
+
+  /**
+   * Consumes as many chars as are available. Must only be called by the consumer.
+   *
+   * @return The number of chars consumed, {@code 0} if the buffer is empty or {@code -1} if it is empty and closed.
+   */
+  public int poll(char[] dst, int off, int len) {
+    final long h = head.value;
+    long available = head.cached - h;
+    if (available < len) {
+      // Closed must be read first, so the tail is final if it is set
+      final boolean done = closed;
+      head.cached = tail.get();
+      available = head.cached - h;
+      if (available == 0)
+        return done ? -1 : 0;
+    }
+
+    final int n = (int) Math.min(available, len);
+    final int index = (int) (h & mask);
+    final int untilEnd = Math.min(n, buffer.length - index);
+    System.arraycopy(buffer, index, dst, off, untilEnd);
+    System.arraycopy(buffer, 0, dst, off + untilEnd, n - untilEnd);
+
+    publish(head, h + n);
+    signal(waitingProducer);
+
+    return n;
+  }
+
+  /**
+   * Consumes at least one char, waiting for the producer as needed. Must only be called by the consumer.
+   *
+   * @return The number of chars consumed or {@code -1} if the buffer is empty and closed.
+   * @throws InterruptedException If the consumer was interrupted while waiting.
+   */
+  public int take(char[] dst, int off, int len) throws InterruptedException {
+    if (len == 0)
+      return 0;
+
+    int idle = 0;
+    while (true) {
+      final int n = poll(dst, off, len);
+      if (n != 0)
+        return n;
+
+      idle = await(idle, true);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SpscCharRingBuffer[capacity: %d, size: %d, closed: %s, wait: %s]", buffer.length, size(),
+        closed, waitStrategy);
+  }
+
+  private void publish(Sequence sequence, long value) {
+    // Parking needs a full fence, so a waiting thread that registers itself concurrently is either seen or sees this
+    if (waitStrategy == WaitStrategy.PARK)
+      sequence.value = value;
+    else
+      Sequence.VALUE.lazySet(sequence, value);
+  }
+
+  private void signal(Thread waiting) {
+    if (waiting != null)
+      LockSupport.unpark(waiting);
+  }
+
+  /**
+   * Waits a little for the other side.
+   *
+   * @return The number of times the caller has waited so far.
+   */
+  private int await(int idle, boolean consumer) throws InterruptedException {
+    if (Thread.interrupted())
+      throw new InterruptedException();
+
+    switch (waitStrategy) {
+    case SPIN:
+      break;
+    case YIELD:
+      Thread.yield();
+      break;
+    case PARK:
+      // Spin a little first, the other side is often just about to make progress
+      if (idle < 100)
+        break;
+
+      final Thread current = Thread.currentThread();
+      if (consumer) {
+        waitingConsumer = current;
+        if (tail.get() == head.value && !closed)
+          LockSupport.park(this);
+        waitingConsumer = null;
+      } else {
+        waitingProducer = current;
+        if (tail.value - head.get() == buffer.length)
+          LockSupport.park(this);
+        waitingProducer = null;
+      }
+
+      if (Thread.interrupted())
+        throw new InterruptedException();
+      break;
+    }
+
+    return idle + 1;
+  }
+
+  /**
+   * Pads the fields of a {@link Sequence}, so they don't share a cache line with anything else.
+   */
+  static class LeftPadding {
+    protected long p01, p02, p03, p04, p05, p06, p07;
+  }
+
+  static class SequenceFields extends LeftPadding {
+    protected volatile long value;
+    // Only accessed by the thread that owns the sequence
+    protected long cached;
+  }
+
+  static class Sequence extends SequenceFields {
+    private static final AtomicLongFieldUpdater<SequenceFields> VALUE = AtomicLongFieldUpdater.newUpdater(
+        SequenceFields.class, "value");
+    protected long p11, p12, p13, p14, p15, p16;
+
+    public long get() {
+      return value;
+    }
+  }
+}
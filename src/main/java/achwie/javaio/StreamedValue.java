@@ -0,0 +1,92 @@
+package achwie.javaio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A replacement value that is too large to be held in memory, e.g. a certificate bundle or an embedded script. When
+ * it is put into a replacement map, the {@link PropertiesFilterReader} opens it on every match and copies it straight
+ * into the caller's buffer in bulk, so the memory used doesn't depend on the size of the value.
+ * </p>
+ *
+ * <pre>
+ * final File certificates = new File(&quot;ca-bundle.pem&quot;);
+ * props.put(&quot;${certificates}&quot;, StreamedValue.ofFile(certificates, StandardCharsets.US_ASCII));
+ * </pre>
+ */
+public abstract class StreamedValue {
+  private static final AtomicLong INSTANCES = new AtomicLong();
+  // Unlike the identity hash code, this is never shared by two instances
+  private final long instance = INSTANCES.incrementAndGet();
+
+  /**
+   * Opens the value for one occurrence of its key. The reader is closed by the caller.
+   *
+   * @return A reader on the value.
+   * @throws IOException If the value could not be opened.
+   */
+  public abstract Reader open() throws IOException;
+
+  /**
+   * Counts the chars of the value by reading it once with a small buffer, so it isn't held in memory.
+   *
+   * @return The length of the value.
+   * @throws IOException If the value could not be read.
+   */
+  public long length() throws IOException {
+    long length = 0;
+    try (Reader r = open()) {
+      final char[] buff = new char[4096];
+      int len;
+      while ((len = r.read(buff)) != -1)
+        length += len;
+    }
+
+    return length;
+  }
+
+  /**
+   * Tells caches whether the value has changed without reading it. Implementations that can change their content should
+   * include a version or modification time.
+   *
+   * @return A string that differs for different contents. By default, it is a sequence number that no other instance
+   *         gets, so only output rendered with this very instance matches it.
+   */
+  public String fingerprint() {
+    return getClass().getName() + '#' + instance;
+  }
+
+  /**
+   * @param file The file holding the value.
+   * @param charset The charset of the file.
+   * @return A value that is read from the file each time it is needed.
+   */
+  public static StreamedValue ofFile(final File file, final Charset charset) {
+    return new StreamedValue() {
+      @Override
+      public Reader open() throws IOException {
+        return new InputStreamReader(new FileInputStream(file), charset);
+      }
+
+      @Override
+      public String fingerprint() {
+        return String.format("file:%s:%s:%d:%d", file.getAbsolutePath(), charset.name(), file.lastModified(),
+            file.length());
+      }
+    };
+  }
+
+  /**
+   * Describes the value without reading it. Code that needs the content must {@link #open()} it.
+   */
+  @Override
+  public String toString() {
+    return String.format("StreamedValue[%s]", fingerprint());
+  }
+}
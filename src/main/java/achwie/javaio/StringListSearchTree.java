@@ -1,10 +1,16 @@
 package achwie.javaio;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-
-import org.junit.Ignore;
+import java.util.Map;
 
 /**
  * <p>
@@ -41,94 +47,478 @@ import org.junit.Ignore;
  * This can e.g. be used to efficiently find out whether a string begins with any of the strings in the list (and some
  * of them start with the same substring).
  * </p>
+ * <p>
+ * Once built, strings can be {@link #add(String) added} and {@link #remove(String) removed} one at a time in time
+ * proportional to their length, by splitting and merging the nodes on their path. The ids of the other strings don't
+ * change, and the ids of removed strings are not reused. The tree must not be searched while it is modified.
+ * </p>
  * 
  * 
  * @author Achim Wiedemann, Jan 9, 2014
  */
-public class StringListSearchTree {
+public class StringListSearchTree implements KeyMatcher {
   private final Node root = new Node();
+  // Maps every char to its case-insensitive form or null if the case matters
+  private final char[] fold;
+  private String[] keys = new String[16];
+  private int keyCount;
+  private int maxKeyLength;
+  // The number of keys of each length, so the longest one is known after removing keys
+  private int[] lengthCounts = new int[16];
+  private int removedCount;
 
   public StringListSearchTree(List<String> sortedListOfStrings) {
-    buildSearchTree(root, sortedListOfStrings, 0);
-    // TODO: optimize tree to keep it as shallow as possible
+    this(sortedListOfStrings.iterator());
+  }
+
+  /**
+   * @param sortedListOfStrings The strings, sorted by {@link String#CASE_INSENSITIVE_ORDER} if {@code ignoreCase} is
+   *          set.
+   * @param ignoreCase Whether the strings should match regardless of case.
+   */
+  public StringListSearchTree(List<String> sortedListOfStrings, boolean ignoreCase) {
+    this(sortedListOfStrings.iterator(), ignoreCase);
+  }
+
+  /**
+   * Builds the tree from a sorted stream of strings in a single pass, without holding the whole list in memory. Each
+   * string is only compared to its predecessor, so the tree is built in time linear to the total length of the strings.
+   * 
+   * @param sortedStrings The strings in the order of {@link String#compareTo(String)}. Duplicates and empty strings
+   *          are ignored.
+   * @throws IllegalArgumentException If the strings are not sorted.
+   */
+  public StringListSearchTree(Iterator<String> sortedStrings) {
+    this(sortedStrings, false);
+  }
+
+  /**
+   * Builds a tree that optionally ignores the case: both the strings and the searched text are folded char by char
+   * through a lookup table while the tree is walked, so the text itself isn't changed and no copies of it are made.
+   * {@link #key(int)} still returns the strings as they were given.
+   * 
+   * @param sortedStrings The strings in the order of {@link String#compareTo(String)} or
+   *          {@link String#CASE_INSENSITIVE_ORDER} if {@code ignoreCase} is set. Duplicates and empty strings are
+   *          ignored.
+   * @param ignoreCase Whether the strings should match regardless of case.
+   * @throws IllegalArgumentException If the strings are not sorted or, when ignoring case, two different strings only
+   *           differ by case.
+   */
+  public StringListSearchTree(Iterator<String> sortedStrings, boolean ignoreCase) {
+    this.fold = ignoreCase ? CaseFolding.TABLE : null;
+    buildSearchTree(sortedStrings);
   }
 
   /**
    * Returns the string which forms the start of the given string. For example, given the list {@code ["This",
    * "That", "There"]}, when passing the string {@code"This is a great day"}, the method would return {@code "This"} .
+   * If several strings of the list form the start of the given string, the longest one is returned.
    * 
    * @param str The string to check whether it starts with one of the string in the list.
    * @return The string which forms the start of the given string or {@code null}, if none of the strings in the list
    *         match.
    */
   public Object startOf(String str) {
-    if (!str.startsWith(root.value))
-      return null;
+    return startOf(str, 0);
+  }
+
+  /**
+   * Returns the string which forms the start of the given char sequence at position {@code offset}. This allows to
+   * search at every position of a larger text without creating a substring for each of them.
+   * 
+   * @param str The char sequence to check.
+   * @param offset The position in {@code str} where the string from the list must begin.
+   * @return The string which starts at {@code offset} or {@code null}, if none of the strings in the list match.
+   */
+  public String startOf(CharSequence str, int offset) {
+    final int id = match(str, offset);
+    return (id != -1) ? keys[id] : null;
+  }
 
+  @Override
+  public int match(CharSequence str, int offset) {
+    final int end = str.length();
     Node n = root;
-    final StringBuilder sb = new StringBuilder();
-    sb.append(n.value);
+    int pos = offset;
+    int match = -1;
 
-    while (!n.isEnd()) {
-      for (Node child : n.children) {
-        if (str.startsWith(child.value, sb.length())) {
-          sb.append(child.value);
-          n = child;
-          break;
+    while (true) {
+      if (!regionMatches(str, pos, n.value))
+        return match;
+
+      pos += n.value.length();
+
+      // Keep going, a longer key might still match
+      if (n.keyId != -1)
+        match = n.keyId;
+
+      if (pos >= end)
+        return match;
+
+      n = n.child(charAt(str, pos));
+      if (n == null)
+        return match;
+    }
+  }
+
+  @Override
+  public boolean isKeyPrefix(CharSequence str, int offset) {
+    final int end = str.length();
+    Node n = root;
+    int pos = offset;
+
+    while (true) {
+      final int len = Math.min(end - pos, n.value.length());
+      for (int i = 0; i < len; i++)
+        if (charAt(str, pos + i) != n.value.charAt(i))
+          return false;
+
+      // The text ends within this node, so every key below it is longer
+      if (len < n.value.length())
+        return true;
+
+      pos += len;
+      if (pos >= end)
+        return n.childCount > 0;
+
+      n = n.child(charAt(str, pos));
+      if (n == null)
+        return false;
+    }
+  }
+
+  /**
+   * Adds a string to the tree.
+   * 
+   * @param key The string.
+   * @return The id of the string, which is the existing one if it is already in the tree.
+   * @throws IllegalArgumentException If the string is empty or, when ignoring case, a different string that only
+   *           differs by case is in the tree.
+   */
+  public int add(String key) {
+    final String folded = (fold != null) ? CaseFolding.fold(key) : key;
+    if (folded.isEmpty())
+      throw new IllegalArgumentException("Key must not be empty");
+
+    // Like a built tree, the root holds the common prefix instead of having a single child
+    if (root.keyId == -1 && root.childCount == 0) {
+      root.value = folded;
+      root.keyId = addKey(key);
+      return root.keyId;
+    }
+
+    Node n = root;
+    int pos = 0;
+    while (true) {
+      final int lcp = commonPrefixLength(n.value, folded, pos);
+      if (lcp < n.value.length())
+        n.split(lcp);
+      pos += lcp;
+
+      if (pos == folded.length()) {
+        if (n.keyId == -1) {
+          n.keyId = addKey(key);
+        } else if (!keys[n.keyId].equals(key)) {
+          throw new IllegalArgumentException(String.format("Strings <%s> and <%s> only differ by case", keys[n.keyId],
+              key));
         }
+        return n.keyId;
       }
+
+      final Node child = n.child(folded.charAt(pos));
+      if (child == null) {
+        final Node leaf = new Node(folded.substring(pos));
+        leaf.keyId = addKey(key);
+        n.insert(leaf);
+        return leaf.keyId;
+      }
+      n = child;
+    }
+  }
+
+  /**
+   * Removes a string from the tree. Its id is not used again.
+   * 
+   * @param key The string (in any case, if the tree ignores the case).
+   * @return Whether the string was in the tree.
+   */
+  public boolean remove(String key) {
+    final String folded = (fold != null) ? CaseFolding.fold(key) : key;
+    Node parent = null;
+    Node n = root;
+    int pos = 0;
+    while (true) {
+      if (!folded.startsWith(n.value, pos))
+        return false;
+      pos += n.value.length();
+      if (pos == folded.length())
+        break;
+
+      parent = n;
+      n = n.child(folded.charAt(pos));
+      if (n == null)
+        return false;
     }
 
-    return sb.toString();
+    if (n.keyId == -1)
+      return false;
+
+    removeKey(n.keyId);
+    n.keyId = -1;
+
+    // Nodes without a key need at least two children, otherwise they are merged with the only one or removed
+    if (n.childCount == 1) {
+      n.mergeWithOnlyChild();
+    } else if (n.childCount == 0 && parent != null) {
+      parent.remove(n.value.charAt(0));
+      if (parent.keyId == -1 && parent.childCount == 1)
+        parent.mergeWithOnlyChild();
+      n = parent;
+    }
+
+    // An empty tree must not have a label, which would look like the prefix of a key
+    if (n == root && root.keyId == -1 && root.childCount == 0)
+      root.value = "";
+
+    return true;
+  }
+
+  /**
+   * @param id The id of a key.
+   * @return The key with the given id or {@code null}, if it has been removed.
+   */
+  @Override
+  public String key(int id) {
+    return keys[id];
+  }
+
+  @Override
+  public int keyLength(int id) {
+    return keys[id].length();
+  }
+
+  /**
+   * @return The upper bound (exclusive) of the key ids, which includes the ids of removed keys.
+   */
+  @Override
+  public int keyCount() {
+    return keyCount;
+  }
+
+  /**
+   * @return The number of keys in the tree.
+   */
+  public int size() {
+    return keyCount - removedCount;
   }
 
-  private void buildSearchTree(Node root, List<String> sortedKeys, int offset) {
-    if (sortedKeys.isEmpty())
-      return;
+  @Override
+  public int maxKeyLength() {
+    return maxKeyLength;
+  }
+
+  /**
+   * @return Whether the strings match regardless of case.
+   */
+  public boolean isIgnoreCase() {
+    return fold != null;
+  }
 
-    String key;
-    Node child;
-    List<String> matching;
-    char ch;
+  private boolean regionMatches(CharSequence str, int offset, String value) {
+    if (offset + value.length() > str.length())
+      return false;
 
-    for (int i = 0; i < sortedKeys.size(); i++) {
-      // Search for first string in sorted list that is still long enough
-      key = sortedKeys.get(i);
-      if (key.length() <= offset)
+    for (int i = 0; i < value.length(); i++)
+      if (charAt(str, offset + i) != value.charAt(i))
+        return false;
+
+    return true;
+  }
+
+  private char charAt(CharSequence str, int index) {
+    final char ch = str.charAt(index);
+    return (fold != null) ? fold[ch] : ch;
+  }
+
+  private void buildSearchTree(Iterator<String> sortedKeys) {
+    // The path to the node of the previous key and the depth at which each node on it ends
+    Node[] path = new Node[16];
+    int[] ends = new int[16];
+    int top = 0;
+    path[0] = root;
+    String prev = "";
+
+    while (sortedKeys.hasNext()) {
+      final String original = sortedKeys.next();
+      final String key = (fold != null) ? CaseFolding.fold(original) : original;
+      if (key.isEmpty())
         continue;
+      if (key.equals(prev)) {
+        if (!original.equals(keys[keyCount - 1]))
+          throw new IllegalArgumentException(String.format("Strings <%s> and <%s> only differ by case",
+              keys[keyCount - 1], original));
+        continue;
+      }
 
-      // Always create first child node
-      ch = key.charAt(offset);
-      child = new Node(ch);
-      root.add(child);
-      matching = new ArrayList<>();
-      matching.add(key);
-
-      // Group matching strings in branches
-      for (int j = i + 1; j < sortedKeys.size(); j++) {
-        key = sortedKeys.get(j);
-
-        // Branch off to form a new group
-        if (key.charAt(offset) != ch) {
-          buildSearchTree(child, matching, offset + 1);
-          ch = key.charAt(offset);
-          child = new Node(ch);
-          root.add(child);
-          matching = new ArrayList<>();
-        }
-        matching.add(key);
+      final int lcp = commonPrefixLength(prev, key);
+      if (lcp == key.length() || (lcp < prev.length() && key.charAt(lcp) < prev.charAt(lcp)))
+        throw new IllegalArgumentException(String.format("Strings must be sorted, but <%s> came after <%s>", key,
+            prev));
+
+      // Nodes that start behind the common prefix can't get any more children
+      while (top > 0 && ends[top - 1] >= lcp)
+        path[top--].freeze();
+
+      // The common prefix ends within the last remaining node, so it has to be split
+      if (ends[top] > lcp) {
+        path[top].split(lcp - ends[top - 1]);
+        ends[top] = lcp;
       }
 
-      buildSearchTree(child, matching, offset + 1);
-      break;
+      final Node child = new Node(key.substring(lcp));
+      child.keyId = addKey(original);
+      path[top].add(child);
+
+      if (++top == path.length) {
+        path = Arrays.copyOf(path, top * 2);
+        ends = Arrays.copyOf(ends, top * 2);
+      }
+      path[top] = child;
+      ends[top] = key.length();
+      prev = key;
     }
 
-    // Flatten tree (merge single children upwards)
-    if (root.children.size() == 1) {
-      Node onlyChild = root.children.get(0);
-      root.children = onlyChild.children;
-      root.value += onlyChild.value;
+    while (top >= 0)
+      path[top--].freeze();
+
+    // Flatten tree (merge single child into the root), unless a key ends there
+    if (root.childCount == 1 && root.keyId == -1)
+      root.mergeWithOnlyChild();
+
+    keys = Arrays.copyOf(keys, keyCount);
+  }
+
+  private int addKey(String key) {
+    if (keyCount == keys.length)
+      keys = Arrays.copyOf(keys, Math.max(16, keyCount * 2));
+    if (key.length() >= lengthCounts.length)
+      lengthCounts = Arrays.copyOf(lengthCounts, Math.max(key.length() + 1, lengthCounts.length * 2));
+
+    keys[keyCount] = key;
+    lengthCounts[key.length()]++;
+    maxKeyLength = Math.max(maxKeyLength, key.length());
+
+    return keyCount++;
+  }
+
+  private void removeKey(int id) {
+    lengthCounts[keys[id].length()]--;
+    while (maxKeyLength > 0 && lengthCounts[maxKeyLength] == 0)
+      maxKeyLength--;
+
+    keys[id] = null;
+    removedCount++;
+  }
+
+  private static int commonPrefixLength(String a, String b) {
+    return commonPrefixLength(a, b, 0);
+  }
+
+  /**
+   * @return The length of the common prefix of {@code a} and the part of {@code b} starting at {@code offset}.
+   */
+  private static int commonPrefixLength(String a, String b, int offset) {
+    final int len = Math.min(a.length(), b.length() - offset);
+    for (int i = 0; i < len; i++)
+      if (a.charAt(i) != b.charAt(offset + i))
+        return i;
+
+    return len;
+  }
+
+  /**
+   * Writes the tree to a file in the format read by {@link MappedStringListSearchTree}. The nodes are stored as flat
+   * tables, so the file can be searched directly once it's mapped into memory.
+   * 
+   * @param file The file to write to.
+   * @throws IOException If the file could not be written.
+   */
+  public void writeTo(File file) throws IOException {
+    // Number the nodes breadth first
+    final List<Node> nodes = new ArrayList<>();
+    final Map<Node, Integer> indices = new IdentityHashMap<>();
+    nodes.add(root);
+    indices.put(root, 0);
+    int slotCount = 0;
+    int labelPoolLength = 0;
+    for (int i = 0; i < nodes.size(); i++) {
+      final Node n = nodes.get(i);
+      slotCount += n.dense ? Node.DENSE_SIZE : n.childCount;
+      labelPoolLength += n.value.length();
+      for (Node child : n.children) {
+        if (child != null) {
+          indices.put(child, nodes.size());
+          nodes.add(child);
+        }
+      }
     }
+
+    // Removed keys are written as empty strings, so the ids stay the same
+    int keyPoolLength = 0;
+    for (int i = 0; i < keyCount; i++)
+      keyPoolLength += keyOrEmpty(i).length();
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MappedStringListSearchTree.MAGIC);
+      out.writeInt(MappedStringListSearchTree.VERSION);
+      out.writeInt(nodes.size());
+      out.writeInt(keyCount);
+      out.writeInt(maxKeyLength);
+      out.writeInt(slotCount);
+      out.writeInt(labelPoolLength);
+      out.writeInt(keyPoolLength);
+      out.writeInt(isIgnoreCase() ? MappedStringListSearchTree.IGNORE_CASE_FLAG : 0);
+
+      // Nodes
+      int labelStart = 0;
+      int childStart = 0;
+      for (Node n : nodes) {
+        out.writeInt(labelStart);
+        out.writeInt(n.value.length());
+        out.writeInt(n.keyId);
+        out.writeInt(childStart);
+        out.writeInt(n.dense ? (n.childCount | MappedStringListSearchTree.DENSE_FLAG) : n.childCount);
+        labelStart += n.value.length();
+        childStart += n.dense ? Node.DENSE_SIZE : n.childCount;
+      }
+
+      // Child slots: node indices, then the first chars of the children of sparse nodes
+      for (Node n : nodes)
+        for (int i = 0; i < (n.dense ? Node.DENSE_SIZE : n.childCount); i++)
+          out.writeInt((n.children[i] != null) ? indices.get(n.children[i]) : -1);
+
+      // Keys
+      int keyStart = 0;
+      for (int i = 0; i < keyCount; i++) {
+        out.writeInt(keyStart);
+        keyStart += keyOrEmpty(i).length();
+      }
+      out.writeInt(keyStart);
+
+      for (Node n : nodes)
+        for (int i = 0; i < (n.dense ? Node.DENSE_SIZE : n.childCount); i++)
+          out.writeChar(n.dense ? i : n.labels[i]);
+
+      for (Node n : nodes)
+        out.writeChars(n.value);
+
+      for (int i = 0; i < keyCount; i++)
+        out.writeChars(keyOrEmpty(i));
+    }
+  }
+
+  private String keyOrEmpty(int id) {
+    return (keys[id] != null) ? keys[id] : "";
   }
 
   @Override
@@ -153,40 +543,199 @@ public class StringListSearchTree {
   }
 
   /**
+   * A node of the tree. The children are kept in one of two primitive layouts, chosen by {@link #freeze()} depending on
+   * the fan-out: nodes with many children that all start with an ASCII char get a dense table indexed by that char,
+   * all others keep the first chars of their children in a sorted array that is searched binary.
    * 
    * @author Achim Wiedemann, Jan 9, 2014
    */
   private static class Node {
     private static final String NL = System.getProperty("line.separator");
+    private static final int DENSE_MIN_CHILDREN = 8;
+    private static final int DENSE_SIZE = 128;
     private String value;
-    private List<Node> children = new ArrayList<>();
+    // The id of the key ending at this node, if any
+    private int keyId = -1;
+    // Sparse layout: first chars of the children (sorted) and the children in the same order
+    private char[] labels = new char[0];
+    // Dense layout: children indexed by their first char
+    private Node[] children = new Node[0];
+    private int childCount;
+    private boolean dense;
 
     public Node() {
       this("");
     }
 
-    public Node(char ch) {
-      this.value = String.valueOf(ch);
-    }
-
     public Node(String str) {
       this.value = str;
     }
 
+    /**
+     * Adds a child. Children must be added in the order of their first chars and before the node is frozen.
+     */
     public void add(Node node) {
-      children.add(node);
+      if (childCount == children.length) {
+        final int newSize = Math.max(4, childCount * 2);
+        labels = Arrays.copyOf(labels, newSize);
+        children = Arrays.copyOf(children, newSize);
+      }
+
+      labels[childCount] = node.value.charAt(0);
+      children[childCount++] = node;
+    }
+
+    /**
+     * Adds a child at any time, keeping the order of the children.
+     */
+    public void insert(Node node) {
+      final char ch = node.value.charAt(0);
+      if (dense) {
+        if (ch < DENSE_SIZE) {
+          children[ch] = node;
+          childCount++;
+          return;
+        }
+        toSparse();
+      }
+
+      if (childCount == children.length) {
+        final int newSize = Math.max(4, childCount * 2);
+        labels = Arrays.copyOf(labels, newSize);
+        children = Arrays.copyOf(children, newSize);
+      }
+
+      int index = childCount;
+      while (index > 0 && labels[index - 1] > ch)
+        index--;
+      System.arraycopy(labels, index, labels, index + 1, childCount - index);
+      System.arraycopy(children, index, children, index + 1, childCount - index);
+      labels[index] = ch;
+      children[index] = node;
+      childCount++;
+
+      if (childCount >= DENSE_MIN_CHILDREN && labels[childCount - 1] < DENSE_SIZE)
+        freeze();
+    }
+
+    /**
+     * Removes the child starting with {@code ch}. Nodes with few children go back to the sparse layout, so a single
+     * child is always the first one.
+     */
+    public void remove(char ch) {
+      if (dense) {
+        children[ch] = null;
+        if (--childCount < DENSE_MIN_CHILDREN)
+          toSparse();
+        return;
+      }
+
+      int index = 0;
+      while (labels[index] != ch)
+        index++;
+      System.arraycopy(labels, index + 1, labels, index, childCount - index - 1);
+      System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+      children[--childCount] = null;
+    }
+
+    private void toSparse() {
+      final char[] sparseLabels = new char[Math.max(4, childCount)];
+      final Node[] sparseChildren = new Node[sparseLabels.length];
+      int count = 0;
+      for (int i = 0; i < DENSE_SIZE; i++) {
+        if (children[i] != null) {
+          sparseLabels[count] = (char) i;
+          sparseChildren[count++] = children[i];
+        }
+      }
+
+      labels = sparseLabels;
+      children = sparseChildren;
+      dense = false;
+    }
+
+    /**
+     * Picks the layout of the child table once all children are known.
+     */
+    public void freeze() {
+      if (dense)
+        return;
+
+      if (childCount >= DENSE_MIN_CHILDREN && labels[childCount - 1] < DENSE_SIZE) {
+        final Node[] table = new Node[DENSE_SIZE];
+        for (int i = 0; i < childCount; i++)
+          table[labels[i]] = children[i];
+
+        children = table;
+        labels = null;
+        dense = true;
+      } else {
+        labels = Arrays.copyOf(labels, childCount);
+        children = Arrays.copyOf(children, childCount);
+      }
+    }
+
+    public void mergeWithOnlyChild() {
+      final Node onlyChild = children[0];
+      value += onlyChild.value;
+      keyId = onlyChild.keyId;
+      labels = onlyChild.labels;
+      children = onlyChild.children;
+      childCount = onlyChild.childCount;
+      dense = onlyChild.dense;
+    }
+
+    /**
+     * Splits the label after {@code length} chars. The rest of the label, the key and the children move to a new
+     * (and only) child.
+     */
+    public void split(int length) {
+      final Node lower = new Node(value.substring(length));
+      lower.keyId = keyId;
+      lower.labels = labels;
+      lower.children = children;
+      lower.childCount = childCount;
+      lower.dense = dense;
+      lower.freeze();
+
+      value = value.substring(0, length);
+      keyId = -1;
+      labels = new char[0];
+      children = new Node[0];
+      childCount = 0;
+      dense = false;
+      add(lower);
+    }
+
+    public Node child(char ch) {
+      if (dense)
+        return (ch < DENSE_SIZE) ? children[ch] : null;
+
+      int low = 0;
+      int high = childCount - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        final char label = labels[mid];
+        if (label < ch)
+          low = mid + 1;
+        else if (label > ch)
+          high = mid - 1;
+        else
+          return children[mid];
+      }
+
+      return null;
     }
 
     public boolean isEnd() {
-      return children.size() == 0;
+      return childCount == 0;
     }
 
     @Override
     public String toString() {
-      return String.format("Node[value: <%s>, #children: %d]", value, children.size());
+      return String.format("Node[value: <%s>, #children: %d]", value, childCount);
     }
 
-    @Ignore("unused")
     public void printTree(Appendable out) throws IOException {
       printTree(this, 0, out);
     }
@@ -198,7 +747,8 @@ public class StringListSearchTree {
       out.append(n + NL);
 
       for (Node child : n.children)
-        printTree(child, level + 2, out);
+        if (child != null)
+          printTree(child, level + 2, out);
     }
   }
 }
@@ -0,0 +1,266 @@
+package achwie.javaio;
+
+import static java.lang.String.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import achwie.javaio.PropertiesFilterReader.ReplacementBuffer;
+import achwie.javaio.PropertiesFilterReader.SimpleReplacementBuffer;
+
+/**
+ * Measures the bytes allocated per processed char and the garbage collections caused by the hot paths of the
+ * {@link PropertiesFilterReader}. Every scenario has a threshold; if one is exceeded, the run exits with status 1, so
+ * paths that are free of allocations stay that way.
+ *
+ * Needs a JVM that supports thread allocation counters ({@code com.sun.management.ThreadMXBean}).
+ */
+public class AllocationPerfTest {
+  private static final int WARMUP_RUNS = 5;
+
+  public static void main(String[] args) throws Exception {
+    final int inputSize = 4 * 1024 * 1024;
+    final int numProperties = 100;
+
+    final List<String> propertyNames = new ArrayList<>();
+    for (int i = 0; i < numProperties; i++)
+      propertyNames.add(format("${property%d}", i));
+
+    final Properties replacements = new Properties();
+    for (int i = 0; i < propertyNames.size(); i++)
+      replacements.put(propertyNames.get(i), format("replacement%d", i));
+
+    final String input = new TestDataGenerator().createTestString(propertyNames, inputSize);
+
+    final List<AllocationTest> tests = new ArrayList<>();
+    tests.add(new RingReplacementBufferTest());
+    tests.add(new SimpleReplacementBufferTest());
+    tests.add(new SearchTreeStartOfTest());
+
+    final AllocationPerfTest test = new AllocationPerfTest();
+    final List<AllocationResult> results = new ArrayList<>();
+    for (AllocationTest t : tests)
+      results.add(test.measure(t, input, replacements));
+
+    boolean failed = false;
+    System.out.println("Allocation test results:");
+    for (AllocationResult r : results) {
+      System.out.println("  " + r);
+      failed |= !r.passed();
+    }
+
+    if (failed) {
+      System.out.println("Allocation thresholds exceeded.");
+      System.exit(1);
+    }
+  }
+
+  public AllocationResult measure(AllocationTest test, String input, Properties replacements) throws Exception {
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+        .getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+
+    // Let the JIT do its work first
+    for (int i = 0; i < WARMUP_RUNS; i++)
+      test.run(input, replacements);
+
+    System.gc();
+    System.gc();
+
+    final long gcCountBefore = gcCount();
+    final long gcTimeBefore = gcTimeMillis();
+    final long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+
+    final long chars = test.run(input, replacements);
+
+    final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+    final long gcCount = gcCount() - gcCountBefore;
+    final long gcTime = gcTimeMillis() - gcTimeBefore;
+
+    return new AllocationResult(test, chars, allocated, gcCount, gcTime);
+  }
+
+  static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      count += Math.max(0, gc.getCollectionCount());
+
+    return count;
+  }
+
+  static long gcTimeMillis() {
+    long time = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      time += Math.max(0, gc.getCollectionTime());
+
+    return time;
+  }
+
+  /**
+   * A hot path to measure.
+   */
+  public static interface AllocationTest {
+    /**
+     * @return The number of chars processed.
+     */
+    public long run(String input, Properties replacements) throws Exception;
+
+    public double maxBytesPerChar();
+
+    /**
+     * @return The maximum number of garbage collections during a run or {@code -1} if there is no limit.
+     */
+    public long maxGcCount();
+
+    public String getName();
+  }
+
+  /**
+   * Reads through a {@link PropertiesFilterReader} with the default
+   * {@link PropertiesFilterReader.RingReplacementBuffer}. Apart from setting up the reader (and its search tree), this
+   * must not allocate anything.
+   */
+  public static class RingReplacementBufferTest implements AllocationTest {
+    private final char[] buff = new char[4096];
+
+    @Override
+    public long run(String input, Properties replacements) throws IOException {
+      return readFully(createReader(input, replacements), buff);
+    }
+
+    protected PropertiesFilterReader createReader(String input, Properties replacements) {
+      return new PropertiesFilterReader(new StringReader(input), replacements);
+    }
+
+    @Override
+    public double maxBytesPerChar() {
+      return 0.05;
+    }
+
+    @Override
+    public long maxGcCount() {
+      return 0;
+    }
+
+    @Override
+    public String getName() {
+      return getClass().getSimpleName();
+    }
+  }
+
+  /**
+   * Reads through a {@link PropertiesFilterReader} with a {@link SimpleReplacementBuffer}, which creates new strings for
+   * every char. The threshold only guards against it getting even worse.
+   */
+  public static class SimpleReplacementBufferTest extends RingReplacementBufferTest {
+    @Override
+    protected PropertiesFilterReader createReader(String input, Properties replacements) {
+      return new PropertiesFilterReader(new StringReader(input), replacements) {
+        @Override
+        protected ReplacementBuffer createBuffer() {
+          return new SimpleReplacementBuffer();
+        }
+      };
+    }
+
+    @Override
+    public double maxBytesPerChar() {
+      return 256;
+    }
+
+    @Override
+    public long maxGcCount() {
+      return -1;
+    }
+  }
+
+  /**
+   * Calls {@link StringListSearchTree#startOf(CharSequence, int)} at every position of the input.
+   */
+  public static class SearchTreeStartOfTest implements AllocationTest {
+    @Override
+    public long run(String input, Properties replacements) {
+      final List<String> keys = new ArrayList<>();
+      for (Object key : replacements.keySet())
+        keys.add(key.toString());
+      Collections.sort(keys);
+      final StringListSearchTree tree = new StringListSearchTree(keys);
+
+      long matches = 0;
+      for (int i = 0; i < input.length(); i++)
+        if (tree.startOf(input, i) != null)
+          matches++;
+
+      if (matches == 0)
+        throw new IllegalStateException("Test data contains no keys");
+
+      return input.length();
+    }
+
+    @Override
+    public double maxBytesPerChar() {
+      return 0.05;
+    }
+
+    @Override
+    public long maxGcCount() {
+      return 0;
+    }
+
+    @Override
+    public String getName() {
+      return getClass().getSimpleName();
+    }
+  }
+
+  private static long readFully(PropertiesFilterReader reader, char[] buff) throws IOException {
+    long chars = 0;
+    try (PropertiesFilterReader r = reader) {
+      int len;
+      while ((len = r.read(buff)) != -1)
+        chars += len;
+    }
+
+    return chars;
+  }
+
+  /**
+   * The allocations and garbage collections of a single run.
+   */
+  public static class AllocationResult {
+    public final AllocationTest test;
+    public final long chars;
+    public final long allocatedBytes;
+    public final long gcCount;
+    public final long gcTimeMillis;
+
+    public AllocationResult(AllocationTest test, long chars, long allocatedBytes, long gcCount, long gcTimeMillis) {
+      this.test = test;
+      this.chars = chars;
+      this.allocatedBytes = allocatedBytes;
+      this.gcCount = gcCount;
+      this.gcTimeMillis = gcTimeMillis;
+    }
+
+    public double bytesPerChar() {
+      return (double) allocatedBytes / chars;
+    }
+
+    public boolean passed() {
+      return bytesPerChar() <= test.maxBytesPerChar() && (test.maxGcCount() == -1 || gcCount <= test.maxGcCount());
+    }
+
+    @Override
+    public String toString() {
+      return format("Test: %s, chars: %d, allocated: %d bytes (%.4f bytes/char, max %.4f), GCs: %d (%dms)%s",
+          test.getName(), chars, allocatedBytes, bytesPerChar(), test.maxBytesPerChar(), gcCount, gcTimeMillis,
+          passed() ? "" : " -> FAILED");
+    }
+  }
+}
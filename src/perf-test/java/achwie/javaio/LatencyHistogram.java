@@ -0,0 +1,108 @@
+package achwie.javaio;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Records latencies in nanoseconds into log-linear buckets: values below {@value #SUB_BUCKETS} are counted exactly,
+ * every higher power of two is split into {@value #SUB_BUCKETS} linear sub buckets. So every value is kept with a
+ * relative error of less than 1%, the whole range of {@code long} fits into a few thousand counters and recording is
+ * just an increment.
+ * </p>
+ * <p>
+ * A loop that measures its own calls back to back doesn't take any samples while a call stalls, which hides the stall
+ * from the percentiles (coordinated omission). {@link #record(long, long)} corrects that by adding the samples that
+ * would have been taken during a stall at the expected interval.
+ * </p>
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private final long[] counts = new long[(Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+  private long count;
+  private long max;
+
+  public void record(long nanos) {
+    if (nanos < 0)
+      throw new IllegalArgumentException("Latency must not be negative: " + nanos);
+
+    counts[indexOf(nanos)]++;
+    count++;
+    max = Math.max(max, nanos);
+  }
+
+  /**
+   * Records a latency and corrects for coordinated omission.
+   *
+   * @param nanos The measured latency.
+   * @param expectedIntervalNanos The interval at which the samples would have been taken without stalls, or {@code 0}
+   *          to record the value only.
+   */
+  public void record(long nanos, long expectedIntervalNanos) {
+    record(nanos);
+
+    if (expectedIntervalNanos <= 0)
+      return;
+
+    for (long missed = nanos - expectedIntervalNanos; missed >= expectedIntervalNanos; missed -= expectedIntervalNanos)
+      record(missed);
+  }
+
+  public long count() {
+    return count;
+  }
+
+  public long max() {
+    return max;
+  }
+
+  /**
+   * @param percentile The percentile, e.g. {@code 99.9}.
+   * @return The (highest equivalent) value below which {@code percentile} percent of the samples are.
+   */
+  public long percentile(double percentile) {
+    if (count == 0)
+      return 0;
+
+    final long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= target)
+        return Math.min(highestValueAt(i), max);
+    }
+
+    return max;
+  }
+
+  public void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    max = 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("samples: %d, p50: %.1fus, p99: %.1fus, p99.9: %.1fus, max: %.1fus", count,
+        percentile(50) / 1000d, percentile(99) / 1000d, percentile(99.9) / 1000d, max / 1000d);
+  }
+
+  private static int indexOf(long value) {
+    if (value < SUB_BUCKETS)
+      return (int) value;
+
+    // The highest bit selects the bucket, the next SUB_BUCKET_BITS bits the sub bucket
+    final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  }
+
+  private static long highestValueAt(int index) {
+    final int bucket = index / SUB_BUCKETS;
+    final int subBucket = index % SUB_BUCKETS;
+    if (bucket == 0)
+      return subBucket;
+
+    final int shift = bucket - 1;
+    return ((long) (SUB_BUCKETS + subBucket) << shift) + (1L << shift) - 1;
+  }
+}
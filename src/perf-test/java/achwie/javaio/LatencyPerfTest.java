@@ -0,0 +1,145 @@
+package achwie.javaio;
+
+import static java.lang.String.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures the latency of the single {@code read()} calls on a {@link PropertiesFilterReader}, which shows stalls (e.g.
+ * caused by refilling the look ahead or by large replacements) that the total time of a run hides. The latencies are
+ * recorded in a {@link LatencyHistogram}, corrected for coordinated omission with the mean latency of a calibration
+ * run as the expected interval.
+ */
+public class LatencyPerfTest {
+  private static final int WARMUP_RUNS = 5;
+
+  public static void main(String[] args) throws Exception {
+    final int inputSize = 4 * 1024 * 1024;
+    final int numProperties = 100;
+
+    final List<String> propertyNames = new ArrayList<>();
+    for (int i = 0; i < numProperties; i++)
+      propertyNames.add(format("${property%d}", i));
+
+    final String input = new TestDataGenerator().createTestString(propertyNames, inputSize);
+
+    final Properties smallReplacements = new Properties();
+    final Properties largeReplacements = new Properties();
+    final char[] largeValueChars = new char[64 * 1024];
+    Arrays.fill(largeValueChars, 'x');
+    final String largeValue = new String(largeValueChars);
+    for (int i = 0; i < propertyNames.size(); i++) {
+      smallReplacements.put(propertyNames.get(i), format("replacement%d", i));
+      largeReplacements.put(propertyNames.get(i), largeValue);
+    }
+
+    final List<LatencyTest> tests = new ArrayList<>();
+    tests.add(new LatencyTest("SmallReplacements", smallReplacements, 1024, 0, false));
+    tests.add(new LatencyTest("LargeReplacements", largeReplacements, 1024, 0, false));
+    tests.add(new LatencyTest("SmallSourceChunks", smallReplacements, 1024, 64, false));
+    tests.add(new LatencyTest("SmallSourceChunksLowLatency", smallReplacements, 1024, 64, true));
+
+    final LatencyPerfTest test = new LatencyPerfTest();
+    final List<String> results = new ArrayList<>();
+    for (LatencyTest t : tests)
+      results.add(format("Test: %s, %s", t.name, test.measure(t, input)));
+
+    System.out.println("Latency test results:");
+    for (String r : results)
+      System.out.println("  " + r);
+  }
+
+  public LatencyHistogram measure(LatencyTest test, String input) throws IOException {
+    final LatencyHistogram histogram = new LatencyHistogram();
+
+    // Let the JIT do its work first, the last run tells the mean latency of a call
+    long totalNanos = 0;
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      histogram.reset();
+      totalNanos = run(test, input, histogram, 0);
+    }
+    final long meanNanos = (histogram.count() > 0) ? totalNanos / histogram.count() : 0;
+
+    histogram.reset();
+    run(test, input, histogram, meanNanos);
+
+    return histogram;
+  }
+
+  /**
+   * @return The total time spent in {@code read()}.
+   */
+  private long run(LatencyTest test, String input, LatencyHistogram histogram, long expectedIntervalNanos)
+      throws IOException {
+    final char[] buff = new char[test.bufferSize];
+    final StopWatch watch = new StopWatch();
+    long totalNanos = 0;
+
+    try (PropertiesFilterReader r = test.createReader(input)) {
+      watch.start();
+      while (true) {
+        final int len = r.read(buff);
+        final long nanos = watch.lap();
+        if (len == -1)
+          break;
+
+        histogram.record(nanos, expectedIntervalNanos);
+        totalNanos += nanos;
+      }
+    }
+
+    return totalNanos;
+  }
+
+  /**
+   * A scenario: the replacements, the number of chars requested per call and how the source delivers its content.
+   */
+  public static class LatencyTest {
+    private final String name;
+    private final Properties replacements;
+    private final int bufferSize;
+    private final int sourceChunkSize;
+    private final boolean lowLatency;
+
+    /**
+     * @param sourceChunkSize The maximum number of chars the source returns per call, or {@code 0} for no limit.
+     */
+    public LatencyTest(String name, Properties replacements, int bufferSize, int sourceChunkSize, boolean lowLatency) {
+      this.name = name;
+      this.replacements = replacements;
+      this.bufferSize = bufferSize;
+      this.sourceChunkSize = sourceChunkSize;
+      this.lowLatency = lowLatency;
+    }
+
+    public PropertiesFilterReader createReader(String input) {
+      final Reader source = (sourceChunkSize > 0) ? new ChunkedReader(input, sourceChunkSize) : new StringReader(input);
+      final PropertiesFilterReader r = new PropertiesFilterReader(source, replacements);
+      r.setLowLatency(lowLatency);
+      return r;
+    }
+  }
+
+  /**
+   * Returns at most a few chars per call, like a socket that receives small packets.
+   */
+  private static class ChunkedReader extends StringReader {
+    private final int chunkSize;
+
+    public ChunkedReader(String s, int chunkSize) {
+      super(s);
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      return super.read(cbuf, off, Math.min(len, chunkSize));
+    }
+  }
+}
@@ -33,6 +33,7 @@ public class PropertiesFilterReaderPerfTest {
 
     final List<PerfTest> tests = new ArrayList<>();
     tests.add(new ReplaceInMemoryTest());
+    tests.add(new ReplaceWithInMemoryReplacer());
     tests.add(new ReplaceWithPropertiesFilterReader());
 
     final List<TestRunResult> results = new ArrayList<>();
@@ -174,6 +175,47 @@ public class PropertiesFilterReaderPerfTest {
     }
   }
 
+  /**
+   * Loads the entire input-file into memory, replaces the properties with a single scan using the
+   * {@link InMemoryReplacer}, and writes the whole file back to disk.
+   */
+  public static class ReplaceWithInMemoryReplacer implements PerfTest {
+    private File outFile;
+
+    @Override
+    public void run(File testFile, Properties replacements) throws IOException {
+      final StringBuilder sb = new StringBuilder();
+      try (final BufferedReader r = new BufferedReader(new FileReader(testFile))) {
+        final char[] buff = new char[4096];
+        int len;
+        while ((len = r.read(buff)) != -1)
+          sb.append(buff, 0, len);
+      }
+
+      final String str = InMemoryReplacer.replaceAll(sb, replacements);
+
+      try (final FileWriter writer = new FileWriter(outFile)) {
+        writer.write(str, 0, str.length());
+      }
+    }
+
+    @Override
+    public String getName() {
+      return getClass().getSimpleName();
+    }
+
+    @Override
+    public void setUp() throws Exception {
+      outFile = File.createTempFile(getName(), "txt");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+      if (outFile != null)
+        outFile.delete();
+    }
+  }
+
   /**
    * Streams the file and replaces properties "on the fly" before writing to disk.
    * 
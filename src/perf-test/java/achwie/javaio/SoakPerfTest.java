@@ -0,0 +1,258 @@
+package achwie.javaio;
+
+import static java.lang.String.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * <p>
+ * Drives a single {@link PropertiesFilterReader} over an endless generated stream for a given time, like a reader in a
+ * long-running service, and samples in regular intervals:
+ * </p>
+ * <ul>
+ * <li>the throughput,</li>
+ * <li>the bytes allocated per char by the reading thread,</li>
+ * <li>the number and total time of garbage collections,</li>
+ * <li>the heap occupancy after a full collection at the end of the interval (which isn't counted for the interval),
+ * i.e. the live data.</li>
+ * </ul>
+ * <p>
+ * At the end, the first and the last third of the samples (skipping the first one, which includes the warm up) are
+ * compared. If the throughput has dropped, the time spent in GC or the live data has grown, or the allocations exceed
+ * the threshold of the {@link AllocationPerfTest.RingReplacementBufferTest}, the run exits with status 1.
+ * </p>
+ *
+ * <pre>
+ * java achwie.javaio.SoakPerfTest [duration in seconds, default 600] [sample interval in seconds, default 10]
+ * </pre>
+ */
+public class SoakPerfTest {
+  private static final double MAX_THROUGHPUT_DROP = 0.2;
+  // GC time per second may grow by this factor, plus a few ms against noise while there is hardly any GC
+  private static final double MAX_GC_TIME_GROWTH = 0.5;
+  private static final double GC_TIME_NOISE_MILLIS_PER_SECOND = 5;
+  private static final long MAX_HEAP_GROWTH_BYTES = 4 * 1024 * 1024;
+  // The soak test reads like this allocation test, just for much longer
+  private static final double MAX_BYTES_PER_CHAR = new AllocationPerfTest.RingReplacementBufferTest()
+      .maxBytesPerChar();
+
+  public static void main(String[] args) throws Exception {
+    final long durationSeconds = (args.length > 0) ? Long.parseLong(args[0]) : 600;
+    final long intervalSeconds = (args.length > 1) ? Long.parseLong(args[1]) : 10;
+    final int numProperties = 100;
+
+    final List<String> propertyNames = new ArrayList<>();
+    for (int i = 0; i < numProperties; i++)
+      propertyNames.add(format("${property%d}", i));
+
+    final Properties replacements = new Properties();
+    for (int i = 0; i < propertyNames.size(); i++)
+      replacements.put(propertyNames.get(i), format("replacement%d", i));
+
+    final String block = new TestDataGenerator().createTestString(propertyNames, 1024 * 1024);
+
+    System.out.printf("Soaking for %ds, sampling every %ds.%n", durationSeconds, intervalSeconds);
+    final List<Sample> samples = new SoakPerfTest().run(new EndlessReader(block), replacements,
+        durationSeconds * 1000000000L, intervalSeconds * 1000000000L);
+
+    final List<String> findings = evaluate(samples);
+    System.out.println("Soak test findings:");
+    if (findings.isEmpty())
+      System.out.println("  none, the reader is stable.");
+    for (String f : findings)
+      System.out.println("  " + f);
+
+    if (!findings.isEmpty())
+      System.exit(1);
+  }
+
+  public List<Sample> run(Reader source, Properties replacements, long durationNanos, long intervalNanos)
+      throws IOException {
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+        .getThreadMXBean();
+    final long threadId = Thread.currentThread().getId();
+    final List<Sample> samples = new ArrayList<>();
+    final char[] buff = new char[4096];
+
+    try (PropertiesFilterReader r = new PropertiesFilterReader(source, replacements)) {
+      final long start = System.nanoTime();
+      long intervalStart = start;
+      long chars = 0;
+      long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+      long gcCountBefore = AllocationPerfTest.gcCount();
+      long gcTimeBefore = AllocationPerfTest.gcTimeMillis();
+
+      while (true) {
+        final int len = r.read(buff);
+        if (len == -1)
+          throw new IllegalStateException("Endless stream has ended");
+        chars += len;
+
+        final long now = System.nanoTime();
+        if (now - intervalStart < intervalNanos)
+          continue;
+
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        final long gcCount = AllocationPerfTest.gcCount() - gcCountBefore;
+        final long gcTime = AllocationPerfTest.gcTimeMillis() - gcTimeBefore;
+
+        // Collect outside of the interval, so only the live data remains
+        System.gc();
+        final long liveBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+        final Sample sample = new Sample(now - start, now - intervalStart, chars, allocated, gcCount, gcTime,
+            liveBytes);
+        samples.add(sample);
+        System.out.println("  " + sample);
+
+        if (now - start >= durationNanos)
+          return samples;
+
+        chars = 0;
+        allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        gcCountBefore = AllocationPerfTest.gcCount();
+        gcTimeBefore = AllocationPerfTest.gcTimeMillis();
+        intervalStart = System.nanoTime();
+      }
+    }
+  }
+
+  /**
+   * Compares the beginning of the run with its end.
+   *
+   * @return The signs of drift or leaks, if any.
+   */
+  public static List<String> evaluate(List<Sample> samples) {
+    final List<String> findings = new ArrayList<>();
+    // The first sample includes the warm up of the JIT
+    final List<Sample> steady = samples.subList(Math.min(1, samples.size()), samples.size());
+    if (steady.size() < 3) {
+      findings.add(format("Only %d samples after the warm up, run longer or sample more often", steady.size()));
+      return findings;
+    }
+
+    final int third = steady.size() / 3;
+    final List<Sample> first = steady.subList(0, third);
+    final List<Sample> last = steady.subList(steady.size() - third, steady.size());
+
+    final double firstThroughput = meanCharsPerSecond(first);
+    final double lastThroughput = meanCharsPerSecond(last);
+    if (lastThroughput < firstThroughput * (1 - MAX_THROUGHPUT_DROP))
+      findings.add(format("Throughput dropped from %.1f to %.1f Mchars/s", firstThroughput / 1e6,
+          lastThroughput / 1e6));
+
+    final double firstGcTime = meanGcMillisPerSecond(first);
+    final double lastGcTime = meanGcMillisPerSecond(last);
+    if (lastGcTime > firstGcTime * (1 + MAX_GC_TIME_GROWTH) + GC_TIME_NOISE_MILLIS_PER_SECOND)
+      findings.add(format("GC time grew from %.1f to %.1f ms/s", firstGcTime, lastGcTime));
+
+    final long growth = meanLiveBytes(last) - meanLiveBytes(first);
+    if (growth > MAX_HEAP_GROWTH_BYTES)
+      findings.add(format("Live data grew by %d KB, which looks like a leak", growth / 1024));
+
+    for (Sample s : steady)
+      if (s.bytesPerChar() > MAX_BYTES_PER_CHAR)
+        findings.add(format("Allocated %.4f bytes/char (max %.4f) at %ds", s.bytesPerChar(), MAX_BYTES_PER_CHAR,
+            s.elapsedNanos / 1000000000L));
+
+    return findings;
+  }
+
+  private static double meanCharsPerSecond(List<Sample> samples) {
+    double sum = 0;
+    for (Sample s : samples)
+      sum += s.charsPerSecond();
+
+    return sum / samples.size();
+  }
+
+  private static double meanGcMillisPerSecond(List<Sample> samples) {
+    double sum = 0;
+    for (Sample s : samples)
+      sum += s.gcMillisPerSecond();
+
+    return sum / samples.size();
+  }
+
+  private static long meanLiveBytes(List<Sample> samples) {
+    long sum = 0;
+    for (Sample s : samples)
+      sum += s.liveBytes;
+
+    return sum / samples.size();
+  }
+
+  /**
+   * Repeats a block of text forever.
+   */
+  public static class EndlessReader extends Reader {
+    private final String block;
+    private int pos;
+
+    public EndlessReader(String block) {
+      this.block = block;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      final int n = Math.min(len, block.length() - pos);
+      block.getChars(pos, pos + n, cbuf, off);
+      pos = (pos + n) % block.length();
+
+      return n;
+    }
+
+    @Override
+    public void close() {
+      // Nothing to release
+    }
+  }
+
+  /**
+   * The measurements of one interval.
+   */
+  public static class Sample {
+    public final long elapsedNanos;
+    public final long intervalNanos;
+    public final long chars;
+    public final long allocatedBytes;
+    public final long gcCount;
+    public final long gcTimeMillis;
+    public final long liveBytes;
+
+    public Sample(long elapsedNanos, long intervalNanos, long chars, long allocatedBytes, long gcCount,
+        long gcTimeMillis, long liveBytes) {
+      this.elapsedNanos = elapsedNanos;
+      this.intervalNanos = intervalNanos;
+      this.chars = chars;
+      this.allocatedBytes = allocatedBytes;
+      this.gcCount = gcCount;
+      this.gcTimeMillis = gcTimeMillis;
+      this.liveBytes = liveBytes;
+    }
+
+    public double charsPerSecond() {
+      return chars * 1e9 / intervalNanos;
+    }
+
+    public double gcMillisPerSecond() {
+      return gcTimeMillis * 1e9 / intervalNanos;
+    }
+
+    public double bytesPerChar() {
+      return (double) allocatedBytes / chars;
+    }
+
+    @Override
+    public String toString() {
+      return format("Sample[at: %ds, throughput: %.1f Mchars/s, allocated: %.4f bytes/char (%.1f MB/s), GCs: %d "
+          + "(%dms), live: %d KB]", elapsedNanos / 1000000000L, charsPerSecond() / 1e6, bytesPerChar(),
+          allocatedBytes * 1e9 / intervalNanos / (1024 * 1024), gcCount, gcTimeMillis, liveBytes / 1024);
+    }
+  }
+}
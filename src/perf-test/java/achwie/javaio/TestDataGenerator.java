@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.List;
 import java.util.Random;
@@ -24,6 +25,23 @@ public class TestDataGenerator {
 
   public void createTestFile(File f, List<String> propertyNames, int fileSize) throws FileNotFoundException,
       IOException {
+    try (Writer fos = new FileWriter(f)) {
+      writeTestData(fos, propertyNames, fileSize);
+    }
+  }
+
+  public String createTestString(List<String> propertyNames, int size) {
+    final StringWriter sw = new StringWriter(size);
+    try {
+      writeTestData(sw, propertyNames, size);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not write to StringWriter", e);
+    }
+
+    return sw.toString();
+  }
+
+  private void writeTestData(Writer fos, List<String> propertyNames, int fileSize) throws IOException {
     int propertyNamesLenTotal = 0;
     for (String propName : propertyNames)
       propertyNamesLenTotal += propName.length();
@@ -32,16 +50,14 @@ public class TestDataGenerator {
 
     final int propCount = propertyNames.size();
     int propNumber = 0;
-    try (Writer fos = new FileWriter(f)) {
-      for (int i = 0; i < fileSize;) {
-        if (i % distance == 0 && propNumber < propCount) {
-          final String pname = propertyNames.get(propNumber++);
-          fos.write(pname);
-          i += pname.length();
-        } else {
-          fos.write(randomWordChar());
-          i++;
-        }
+    for (int i = 0; i < fileSize;) {
+      if (i % distance == 0 && propNumber < propCount) {
+        final String pname = propertyNames.get(propNumber++);
+        fos.write(pname);
+        i += pname.length();
+      } else {
+        fos.write(randomWordChar());
+        i++;
       }
     }
   }
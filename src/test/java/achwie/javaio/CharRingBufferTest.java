@@ -101,4 +101,15 @@ public class CharRingBufferTest {
     assertEquals(-1, buffer.take());
     assertEquals(-1, buffer.take());
   }
+
+  @Test
+  public void test_skip_withOverflow() {
+    CharRingBuffer buffer = new CharRingBuffer(5);
+    buffer.append("John Doe");
+
+    assertEquals(3, buffer.skip(3));
+    assertEquals("oe", buffer.toString());
+    assertEquals(2, buffer.skip(3));
+    assertEquals(0, buffer.length());
+  }
 }
@@ -0,0 +1,82 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class CompiledTemplateTest {
+  @Test
+  public void test_render_multipleValueSets() throws IOException {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    props.put("${greeting}", "Hello");
+    final CompiledTemplate template = CompiledTemplate.compile(new StringReader("${greeting} ${name}, ${name}!"),
+        props.keySet());
+
+    assertEquals("Hello World, World!", template.render(props));
+
+    props.put("${name}", "Universe");
+    assertEquals("Hello Universe, Universe!", template.render(props));
+    assertEquals(3, template.referenceCount());
+  }
+
+  @Test
+  public void test_render_missingValueKeepsKey() {
+    final Properties keys = new Properties();
+    keys.put("${name}", "World");
+    final CompiledTemplate template = CompiledTemplate.compile("Hello ${name}!", keys.keySet());
+
+    assertEquals("Hello ${name}!", template.render(new Properties()));
+  }
+
+  @Test
+  public void test_render_partialKeyAtEnd() {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    props.put("${age}", "42");
+    final CompiledTemplate template = CompiledTemplate.compile("${age} ${na", props.keySet());
+
+    assertEquals("42 ${na", template.render(props));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_render_streamedValueIsRejected() {
+    final CompiledTemplate template = CompiledTemplate.compile("Hello ${name}!", Arrays.asList("${name}"));
+    final Map<Object, Object> values = new HashMap<>();
+    values.put("${name}", StreamedValue.ofFile(new File("name.txt"), Charset.forName("UTF-8")));
+
+    template.render(values);
+  }
+
+  @Test
+  public void test_renderedLength() {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    final CompiledTemplate template = CompiledTemplate.compile("Hello ${name}!", props.keySet());
+
+    assertEquals("Hello World!".length(), template.renderedLength(props));
+  }
+
+  @Test
+  public void test_renderTo_sameAsFilterReader() throws IOException {
+    final String input = "${property0} in a certain ${property1} string.";
+    final Properties props = new Properties();
+    props.put("${property0}", "replacement0");
+    props.put("${property1}", "replacement1");
+    final StringWriter out = new StringWriter();
+
+    CompiledTemplate.compile(input, props.keySet()).renderTo(props, out);
+
+    assertEquals("replacement0 in a certain replacement1 string.", out.toString());
+  }
+}
@@ -0,0 +1,74 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DelimitedKeyMatcherTest {
+  @Test
+  public void test_match_sameAsSearchTree() {
+    final List<String> keys = new ArrayList<>();
+    for (int i = 0; i < 200; i++)
+      keys.add("${p" + i + "}");
+    Collections.sort(keys);
+    final KeyMatcher tree = new StringListSearchTree(keys);
+    final KeyMatcher delimited = new DelimitedKeyMatcher(keys, "${p", "}");
+
+    final Random rand = new Random(42);
+    final StringBuilder text = new StringBuilder();
+    final String chars = "${}p0123456789";
+    for (int i = 0; i < 20000; i++)
+      text.append(chars.charAt(rand.nextInt(chars.length())));
+    for (int i = 0; i < 100; i++)
+      text.insert(rand.nextInt(text.length()), keys.get(rand.nextInt(keys.size())));
+
+    for (int i = 0; i < text.length(); i++) {
+      final int expected = tree.match(text, i);
+      final int actual = delimited.match(text, i);
+      assertEquals((expected != -1) ? tree.key(expected) : null, (actual != -1) ? delimited.key(actual) : null);
+      final String rest = text.substring(i, Math.min(text.length(), i + 5));
+      assertEquals(rest, tree.isKeyPrefix(rest, 0), delimited.isKeyPrefix(rest, 0));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_keyNotDelimited() {
+    new DelimitedKeyMatcher(Arrays.asList("${a}", "${b}}"), "${", "}");
+  }
+
+  @Test
+  public void test_filterWithDelimitedStrategy() throws IOException {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    props.put("${greeting}", "Hello");
+
+    final PropertiesFilterReader r = new PropertiesFilterReader(new StringReader("${greeting} ${name}! ${x}"), props,
+        MatchStrategy.DELIMITED);
+
+    assertEquals(MatchStrategy.DELIMITED, r.getMatchStrategy());
+    assertEquals("Hello World! ${x}", readToString(r));
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+  private String readToString(Reader reader) throws IOException {
+    try (Reader r = reader) {
+      final StringBuilder sb = new StringBuilder();
+      final char[] buff = new char[4096];
+      int len;
+      while ((len = r.read(buff)) != -1)
+        sb.append(buff, 0, len);
+
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class FilterEventsTest {
+  @Test
+  public void test_open_withoutRecording() throws Exception {
+    assertNull(FilterEvents.open());
+  }
+
+  @Test
+  public void test_recording_lifecycleAndLargeMatch() throws Exception {
+    assumeTrue(isFlightRecorderAvailable());
+
+    final StringBuilder big = new StringBuilder();
+    for (int i = 0; i < 2000; i++)
+      big.append('x');
+    final Map<Object, Object> replacements = new HashMap<>();
+    replacements.put("${big}", big.toString());
+    replacements.put("${small}", "s");
+    final String input = "a ${big} b ${small} c";
+
+    final Object recording = startRecording("FilterReader", "LargeMatch", "SourceRefill");
+    final StringWriter out = new StringWriter();
+    try (PropertiesFilterReader r = new PropertiesFilterReader(new StringReader(input), replacements)) {
+      r.transferTo(out);
+    } finally {
+      method("jdk.jfr.Recording", "stop").invoke(recording);
+    }
+
+    final List<Object> events = dump(recording);
+    final Object lifecycle = single(events, "achwie.javaio.FilterReader");
+    assertEquals(Long.valueOf(input.length()), value(lifecycle, "charsRead"));
+    assertEquals(Long.valueOf(out.toString().length()), value(lifecycle, "charsWritten"));
+    assertEquals(Long.valueOf(2), value(lifecycle, "replacements"));
+
+    final Object match = single(events, "achwie.javaio.LargeMatch");
+    assertEquals("${big}", value(match, "key"));
+    assertEquals(Integer.valueOf(2000), value(match, "valueLength"));
+
+    long refillChars = 0;
+    for (Object refill : named(events, "achwie.javaio.SourceRefill"))
+      refillChars += (Long) value(refill, "chars");
+    assertEquals(input.length(), refillChars);
+  }
+
+  @Test
+  public void test_recording_startedWhileReaderIsOpen() throws Exception {
+    assumeTrue(isFlightRecorderAvailable());
+
+    final Map<Object, Object> replacements = new HashMap<>();
+    replacements.put("${name}", "World");
+    final char[] buff = new char[8];
+
+    final PropertiesFilterReader r = new PropertiesFilterReader(new StringReader("Hello ${name}!"), replacements);
+    Object recording = null;
+    try {
+      assertEquals(6, r.read(buff, 0, 6));
+
+      recording = startRecording("FilterReader");
+      assertEquals(6, r.read(buff, 0, 8));
+      assertEquals(-1, r.read(buff, 0, 8));
+    } finally {
+      // The reader is closed while recording, so its lifecycle event is committed
+      r.close();
+      if (recording != null)
+        method("jdk.jfr.Recording", "stop").invoke(recording);
+    }
+
+    final Object lifecycle = single(dump(recording), "achwie.javaio.FilterReader");
+    assertEquals(Long.valueOf(6), value(lifecycle, "charsWritten"));
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+
+  private boolean isFlightRecorderAvailable() {
+    try {
+      Class.forName("jdk.jfr.EventFactory");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Starts a recording of the given events without thresholds.
+   */
+  private Object startRecording(String... names) throws Exception {
+    final Object recording = Class.forName("jdk.jfr.Recording").getConstructor().newInstance();
+    final Method enable = method("jdk.jfr.Recording", "enable", String.class);
+    final Method withoutThreshold = method("jdk.jfr.EventSettings", "withoutThreshold");
+    for (String name : Arrays.asList(names))
+      withoutThreshold.invoke(enable.invoke(recording, "achwie.javaio." + name));
+    method("jdk.jfr.Recording", "start").invoke(recording);
+
+    return recording;
+  }
+
+  private List<Object> dump(Object recording) throws Exception {
+    final Path file = Files.createTempFile(getClass().getSimpleName(), ".jfr");
+    try {
+      method("jdk.jfr.Recording", "dump", Path.class).invoke(recording, file);
+      method("jdk.jfr.Recording", "close").invoke(recording);
+
+      @SuppressWarnings("unchecked")
+      final List<Object> events = (List<Object>) method("jdk.jfr.consumer.RecordingFile", "readAllEvents", Path.class)
+          .invoke(null, file);
+      return events;
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private Object single(List<Object> events, String name) throws Exception {
+    final List<Object> named = named(events, name);
+    assertEquals(name, 1, named.size());
+
+    return named.get(0);
+  }
+
+  private List<Object> named(List<Object> events, String name) throws Exception {
+    final Method getEventType = method("jdk.jfr.consumer.RecordedEvent", "getEventType");
+    final Method getName = method("jdk.jfr.EventType", "getName");
+    final List<Object> named = new ArrayList<>();
+    for (Object e : events)
+      if (name.equals(getName.invoke(getEventType.invoke(e))))
+        named.add(e);
+
+    return named;
+  }
+
+  private Object value(Object event, String field) throws Exception {
+    return method("jdk.jfr.consumer.RecordedObject", "getValue", String.class).invoke(event, field);
+  }
+
+  private Method method(String className, String name, Class<?>... parameterTypes) throws Exception {
+    return Class.forName(className).getMethod(name, parameterTypes);
+  }
+}
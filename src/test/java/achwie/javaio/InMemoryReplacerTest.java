@@ -0,0 +1,113 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class InMemoryReplacerTest {
+  @Test
+  public void test_replaceAll() {
+    final Map<Object, Object> props = new HashMap<>();
+    props.put("${name}", "World");
+    props.put("${greeting}", "Hello");
+
+    assertEquals("Hello World, World!", InMemoryReplacer.replaceAll("${greeting} ${name}, ${name}!", props));
+  }
+
+  @Test
+  public void test_replaceAll_longestMatchWins() {
+    final Map<Object, Object> props = new HashMap<>();
+    props.put("ab", "1");
+    props.put("abc", "2");
+
+    assertEquals("2x1", InMemoryReplacer.replaceAll("abcxab", props));
+  }
+
+  @Test
+  public void test_replaceAll_valuesAreNotRescanned() {
+    final Map<Object, Object> props = new HashMap<>();
+    props.put("a", "b");
+    props.put("b", "c");
+
+    assertEquals("bcc", InMemoryReplacer.replaceAll("abb", props));
+  }
+
+  @Test
+  public void test_replaceAll_emptyAndMissingValues() {
+    final Map<Object, Object> props = new HashMap<>();
+    props.put("${empty}", "");
+    props.put("${missing}", "value");
+    final InMemoryReplacer replacer = new InMemoryReplacer(props);
+    props.remove("${missing}");
+
+    assertEquals("[][${missing}]", replacer.replaceAll(CharBuffer.wrap("[${empty}][${missing}]")));
+  }
+
+  @Test
+  public void test_replaceAll_parallelEqualsSequential() throws IOException {
+    final Map<Object, Object> props = new HashMap<>();
+    props.put("ab", "<1>");
+    props.put("abc", "<2>");
+    props.put("bca", "<3>");
+    props.put("cabcab", "<4>");
+    props.put("c", "");
+
+    final Random random = new Random(42);
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 10000; i++)
+      text.append((char) ('a' + random.nextInt(4)));
+
+    final InMemoryReplacer replacer = new InMemoryReplacer(props);
+    replacer.setChunkSize(7);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      replacer.setExecutor(executor);
+
+      assertEquals(filterReader(text.toString(), props), replacer.replaceAll(text));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void test_replaceAll_streamedValue() {
+    final StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 5000; i++)
+      large.append((char) ('a' + i % 26));
+    final String value = large.toString();
+    final Map<Object, Object> props = new HashMap<>();
+    props.put("${large}", new StreamedValue() {
+      @Override
+      public Reader open() {
+        return new StringReader(value);
+      }
+    });
+
+    assertEquals("<" + value + "|" + value + ">", InMemoryReplacer.replaceAll("<${large}|${large}>", props));
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+
+  private String filterReader(String text, Map<Object, Object> props) throws IOException {
+    final StringWriter out = new StringWriter();
+    try (PropertiesFilterReader r = new PropertiesFilterReader(new StringReader(text), props)) {
+      final char[] buff = new char[256];
+      int len;
+      while ((len = r.read(buff)) != -1)
+        out.write(buff, 0, len);
+    }
+
+    return out.toString();
+  }
+}
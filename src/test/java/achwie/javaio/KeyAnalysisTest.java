@@ -0,0 +1,57 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class KeyAnalysisTest {
+  @Test
+  public void test_of_shape() {
+    final KeyAnalysis analysis = KeyAnalysis.of(Arrays.asList("${host}", "${port}", "${host}", "", "${p}"));
+
+    assertEquals(3, analysis.keyCount());
+    assertEquals(4, analysis.minKeyLength());
+    assertEquals(7, analysis.maxKeyLength());
+    assertEquals("${", analysis.commonPrefix());
+    assertEquals("}", analysis.commonSuffix());
+    assertEquals(9, analysis.alphabetSize());
+    assertEquals(MatchStrategy.SEARCH_TREE, analysis.recommendedStrategy());
+    assertTrue(analysis.createMatcher(MatchStrategy.DELIMITED) instanceof DelimitedKeyMatcher);
+  }
+
+  @Test
+  public void test_recommendedStrategy() {
+    assertEquals(MatchStrategy.SINGLE_KEY, KeyAnalysis.of(Arrays.asList("${host}")).recommendedStrategy());
+    assertEquals(MatchStrategy.SEARCH_TREE, KeyAnalysis.of(Collections.emptyList()).recommendedStrategy());
+    assertEquals(MatchStrategy.SEARCH_TREE, KeyAnalysis.of(Arrays.asList("foo", "bar")).recommendedStrategy());
+
+    final List<String> keys = new ArrayList<>();
+    for (int i = 0; i < KeyAnalysis.DELIMITED_MIN_KEYS; i++)
+      keys.add("${property" + i + "}");
+    final KeyAnalysis analysis = KeyAnalysis.of(keys);
+
+    assertEquals(MatchStrategy.DELIMITED, analysis.recommendedStrategy());
+    assertTrue(analysis.createMatcher(MatchStrategy.AUTO) instanceof DelimitedKeyMatcher);
+    assertTrue(analysis.createMatcher(MatchStrategy.SEARCH_TREE) instanceof StringListSearchTree);
+  }
+
+  @Test
+  public void test_createMatcher_singleKey() {
+    final KeyMatcher matcher = KeyAnalysis.of(Arrays.asList("${host}")).createMatcher(MatchStrategy.AUTO);
+
+    assertEquals(0, matcher.match("x${host}", 1));
+    assertEquals(-1, matcher.match("x${host", 1));
+    assertTrue(matcher.isKeyPrefix("${ho", 0));
+    assertFalse(matcher.isKeyPrefix("${host}", 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_createMatcher_strategyDoesNotFit() {
+    KeyAnalysis.of(Arrays.asList("foo", "${bar}")).createMatcher(MatchStrategy.DELIMITED);
+  }
+}
@@ -0,0 +1,108 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class KeyScannerTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Test
+  public void test_scan_offsetsAndLines() throws IOException {
+    final KeyScanner scanner = new KeyScanner(Arrays.asList("${a}", "${ab}", "${b}"));
+
+    final OccurrenceIndex index = scanner.scan(new StringReader("x ${ab}\n\n${b} ${a}${a"));
+
+    assertEquals(3, index.size());
+    assertEquals("${ab}", index.key(0));
+    assertEquals(2, index.offset(0));
+    assertEquals(1, index.line(0));
+    assertEquals("${b}", index.key(1));
+    assertEquals(9, index.offset(1));
+    assertEquals(3, index.line(1));
+    assertEquals("${a}", index.key(2));
+    assertEquals(14, index.offset(2));
+  }
+
+  @Test
+  public void test_scan_keysAcrossRefills() throws IOException {
+    final KeyMatcher matcher = new StringListSearchTree(Arrays.asList("abc", "cab"));
+    final KeyScanner scanner = new KeyScanner(matcher, 4);
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 100; i++)
+      text.append("abc\n");
+
+    final List<Long> offsets = new ArrayList<>();
+    final long count = scanner.scan(new StringReader(text.toString()), new KeyScanner.OccurrenceHandler() {
+      @Override
+      public void occurrence(int keyId, long offset, int line) {
+        assertEquals("abc", matcher.key(keyId));
+        assertEquals(offsets.size() + 1, line);
+        offsets.add(offset);
+      }
+    });
+
+    assertEquals(100, count);
+    assertEquals(Long.valueOf(396), offsets.get(99));
+  }
+
+  @Test
+  public void test_scan_filesInParallel() throws IOException {
+    final KeyScanner scanner = new KeyScanner(Arrays.asList("${unresolved}"));
+    final List<File> files = new ArrayList<>();
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      for (int i = 0; i < 4; i++)
+        files.add(createFile(i, "line\n${unresolved}\n"));
+
+      final List<OccurrenceIndex> indices = scanner.scan(files, UTF_8, executor);
+
+      assertEquals(4, indices.size());
+      for (int i = 0; i < 4; i++) {
+        assertEquals(files.get(i), indices.get(i).file());
+        assertEquals(i, indices.get(i).countOf(0));
+      }
+      assertEquals(3, indices.get(1).line(0));
+    } finally {
+      executor.shutdown();
+      for (File f : files)
+        f.delete();
+    }
+  }
+
+  @Test
+  public void test_scan_noKeysReadsToEnd() throws IOException {
+    final KeyScanner scanner = new KeyScanner(Collections.emptyList());
+    final StringReader in = new StringReader("no keys\nat all");
+
+    assertTrue(scanner.scan(in).isEmpty());
+    assertEquals(-1, in.read());
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+
+  private File createFile(int repetitions, String content) throws IOException {
+    final File f = File.createTempFile(getClass().getSimpleName(), "txt");
+    try (Writer w = new OutputStreamWriter(new FileOutputStream(f), UTF_8)) {
+      w.write("header\n");
+      for (int i = 0; i < repetitions; i++)
+        w.write(content);
+    }
+
+    return f;
+  }
+}
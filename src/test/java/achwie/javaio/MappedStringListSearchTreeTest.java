@@ -0,0 +1,117 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class MappedStringListSearchTreeTest {
+  @Test
+  public void test_match_sameAsHeapTree() throws IOException {
+    final List<String> strings = new ArrayList<>();
+    for (int i = 0; i < 500; i++)
+      strings.add(String.format("${property%d}", i));
+    strings.add("${p}");
+    strings.add("x\u00e4");
+    Collections.sort(strings);
+
+    final StringListSearchTree tree = new StringListSearchTree(strings);
+    final File f = File.createTempFile(getClass().getSimpleName(), "tree");
+    try {
+      tree.writeTo(f);
+      final MappedStringListSearchTree mapped = MappedStringListSearchTree.open(f);
+
+      assertEquals(tree.keyCount(), mapped.keyCount());
+      assertEquals(tree.maxKeyLength(), mapped.maxKeyLength());
+      for (String str : strings) {
+        final int id = mapped.match(str + "}", 0);
+        assertEquals(tree.match(str + "}", 0), id);
+        assertEquals(str, mapped.key(id));
+        assertEquals(str.length(), mapped.keyLength(id));
+      }
+      for (String str : new String[] { "", "$", "${property1", "${property1}", "${p}", "x", "y" })
+        assertEquals(str, tree.isKeyPrefix(str, 0), mapped.isKeyPrefix(str, 0));
+      assertEquals(-1, mapped.match("${property", 0));
+      assertEquals(-1, mapped.match("unknown", 0));
+    } finally {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void test_match_ignoreCase() throws IOException {
+    final List<String> strings = new ArrayList<>();
+    strings.add("${Host}");
+    strings.add("${port}");
+
+    final File f = File.createTempFile(getClass().getSimpleName(), "tree");
+    try {
+      new StringListSearchTree(strings, true).writeTo(f);
+      final MappedStringListSearchTree mapped = MappedStringListSearchTree.open(f);
+
+      assertEquals("${Host}", mapped.key(mapped.match("${HOST}", 0)));
+      assertEquals("${port}", mapped.key(mapped.match("${PoRt}", 0)));
+      assertTrue(mapped.isKeyPrefix("${hO", 0));
+      assertEquals(-1, mapped.match("${hos}", 0));
+    } finally {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void test_filterWithMappedTree() throws IOException {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    props.put("${greeting}", "Hello");
+    final List<String> keys = new ArrayList<>();
+    for (Object key : props.keySet())
+      keys.add(key.toString());
+    Collections.sort(keys);
+
+    final File f = File.createTempFile(getClass().getSimpleName(), "tree");
+    try {
+      new StringListSearchTree(keys).writeTo(f);
+      final Reader r = new PropertiesFilterReader(new StringReader("${greeting} ${name}!"),
+          MappedStringListSearchTree.open(f), props);
+
+      final char[] buff = new char[64];
+      final int len = r.read(buff);
+
+      assertEquals("Hello World!", new String(buff, 0, len));
+    } finally {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void test_writeTo_afterRemove() throws IOException {
+    final List<String> strings = new ArrayList<>();
+    strings.add("${a}");
+    strings.add("${b}");
+    strings.add("${c}");
+    final StringListSearchTree tree = new StringListSearchTree(strings);
+    tree.remove("${b}");
+    tree.add("${d}");
+
+    final File f = File.createTempFile(getClass().getSimpleName(), "tree");
+    try {
+      tree.writeTo(f);
+      final MappedStringListSearchTree mapped = MappedStringListSearchTree.open(f);
+
+      assertEquals(4, mapped.keyCount());
+      assertEquals(-1, mapped.match("${b}", 0));
+      assertEquals(2, mapped.match("${c}", 0));
+      assertEquals(3, mapped.match("${d}", 0));
+    } finally {
+      f.delete();
+    }
+  }
+}
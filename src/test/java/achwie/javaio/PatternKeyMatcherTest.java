@@ -0,0 +1,89 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class PatternKeyMatcherTest {
+  @Test
+  public void test_match_literalsAndPatterns() {
+    final PatternKeyMatcher matcher = PatternKeyMatcher.compile(Arrays.asList("${name}", "token"),
+        Arrays.asList("token-[0-9a-f]{4}", "id=[^ ]{2}", "a.c"));
+
+    assertEquals("${name}", key(matcher, "${name}!"));
+    assertEquals("token-[0-9a-f]{4}", key(matcher, "token-09af "));
+    assertEquals("token", key(matcher, "token-09ag"));
+    assertEquals("id=[^ ]{2}", key(matcher, "id=x1"));
+    assertNull(key(matcher, "id=x "));
+    assertEquals("a.c", key(matcher, "a\u20acc"));
+    assertEquals(-1, matcher.match("${nam", 0));
+    assertEquals(10, matcher.maxKeyLength());
+    assertEquals(5, matcher.keyLength(matcher.match("id=ab", 0)));
+  }
+
+  @Test
+  public void test_match_literalWinsOverPatternOfSameLength() {
+    final PatternKeyMatcher matcher = PatternKeyMatcher.compile(Arrays.asList("key1"), Arrays.asList("key[0-9]"));
+
+    assertEquals("key1", key(matcher, "key1"));
+    assertEquals("key[0-9]", key(matcher, "key2"));
+  }
+
+  @Test
+  public void test_isKeyPrefix() {
+    final PatternKeyMatcher matcher = PatternKeyMatcher.compile(Collections.<String> emptyList(),
+        Arrays.asList("\\[[a-z]{3}\\]"));
+
+    assertTrue(matcher.isKeyPrefix("", 0));
+    assertTrue(matcher.isKeyPrefix("[ab", 0));
+    assertFalse(matcher.isKeyPrefix("[abc]", 0));
+    assertFalse(matcher.isKeyPrefix("[a1", 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_compile_variableLength() {
+    PatternKeyMatcher.compile(Collections.<String> emptyList(), Arrays.asList("token-[0-9]+"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_compile_unclosedClass() {
+    PatternKeyMatcher.compile(Collections.<String> emptyList(), Arrays.asList("[a-z"));
+  }
+
+  @Test
+  public void test_filterWithPatterns() throws IOException {
+    final Properties props = new Properties();
+    props.put("${user}", "admin");
+    props.put("token-[0-9a-f]{8}", "token-********");
+    final KeyMatcher keys = PatternKeyMatcher.compile(Arrays.asList("${user}"), Arrays.asList("token-[0-9a-f]{8}"));
+
+    final Reader r = new PropertiesFilterReader(new StringReader("${user}: token-0123abcd, token-xyz"), keys, props);
+
+    assertEquals("admin: token-********, token-xyz", readToString(r));
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+  private String key(KeyMatcher matcher, String str) {
+    final int id = matcher.match(str, 0);
+    return (id != -1) ? matcher.key(id) : null;
+  }
+
+  private String readToString(Reader reader) throws IOException {
+    try (Reader r = reader) {
+      final StringBuilder sb = new StringBuilder();
+      final char[] buff = new char[4096];
+      int len;
+      while ((len = r.read(buff)) != -1)
+        sb.append(buff, 0, len);
+
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class PipelinedPropertiesFilterTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Test
+  public void test_filter_compressed() throws IOException {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    props.put("${greeting}", "Hello");
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; i++)
+      sb.append("${greeting} ${name} #").append(i).append('\n');
+    final String input = sb.toString();
+    final String expected = readToString(new PropertiesFilterReader(new StringReader(input), props));
+
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (Writer w = new OutputStreamWriter(new GZIPOutputStream(compressed), UTF_8)) {
+      w.write(input);
+    }
+
+    final PipelinedPropertiesFilter filter = new PipelinedPropertiesFilter(props);
+    filter.setInputCompressed(true);
+    filter.setOutputCompressed(true);
+    filter.setInputCharset(UTF_8);
+    filter.setOutputCharset(UTF_8);
+    filter.setChunkSize(1000);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    filter.filter(new ByteArrayInputStream(compressed.toByteArray()), out);
+
+    final String actual = readToString(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(
+        out.toByteArray())), UTF_8));
+    assertEquals(expected, actual);
+  }
+
+  @Test(expected = IOException.class)
+  public void test_filter_corruptInput() throws IOException {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+
+    final PipelinedPropertiesFilter filter = new PipelinedPropertiesFilter(props);
+    filter.setInputCompressed(true);
+    filter.filter(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 }), new ByteArrayOutputStream());
+  }
+
+  @Test
+  public void test_filter_corruptInputIsClosed() {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    final AtomicBoolean closed = new AtomicBoolean();
+    final InputStream in = new ByteArrayInputStream(new byte[] { 1, 2, 3, 4 }) {
+      @Override
+      public void close() {
+        closed.set(true);
+      }
+    };
+
+    final PipelinedPropertiesFilter filter = new PipelinedPropertiesFilter(props);
+    filter.setInputCompressed(true);
+    try {
+      filter.filter(in, new ByteArrayOutputStream());
+      fail("Corrupt input was accepted");
+    } catch (IOException e) {
+      // Expected
+    }
+
+    assertTrue(closed.get());
+  }
+
+  @Test(timeout = 10000)
+  public void test_filter_interruptedWhileSourceBlocks() throws InterruptedException {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    final BlockingInputStream in = new BlockingInputStream();
+    final AtomicReference<IOException> failure = new AtomicReference<>();
+
+    final Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          new PipelinedPropertiesFilter(props).filter(in, new ByteArrayOutputStream());
+        } catch (IOException e) {
+          failure.set(e);
+        }
+      }
+    };
+    t.start();
+    in.awaitRead();
+    t.interrupt();
+    t.join();
+
+    assertTrue(failure.get() instanceof InterruptedIOException);
+    assertTrue(in.isClosed());
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+  private String readToString(Reader reader) throws IOException {
+    try (Reader r = reader) {
+      final StringBuilder sb = new StringBuilder();
+      final char[] buff = new char[4096];
+      int len;
+      while ((len = r.read(buff)) != -1)
+        sb.append(buff, 0, len);
+
+      return sb.toString();
+    }
+  }
+
+  /**
+   * A source whose reads ignore interrupts and only return once it is closed, like a socket stream.
+   */
+  private static class BlockingInputStream extends InputStream {
+    private boolean reading;
+    private boolean closed;
+
+    @Override
+    public synchronized int read() throws IOException {
+      reading = true;
+      notifyAll();
+      while (!closed) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          // Ignored, like a blocking socket read does
+        }
+      }
+
+      throw new IOException("Stream closed");
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return 0;
+
+      b[off] = (byte) read();
+      return 1;
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+      notifyAll();
+    }
+
+    public synchronized boolean isClosed() {
+      return closed;
+    }
+
+    public synchronized void awaitRead() throws InterruptedException {
+      while (!reading)
+        wait();
+    }
+  }
+}
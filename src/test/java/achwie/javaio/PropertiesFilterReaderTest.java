@@ -5,6 +5,9 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.Random;
 
@@ -97,6 +100,183 @@ public class PropertiesFilterReaderTest {
     assertEquals(expected, actual);
   }
 
+  @Test
+  public void test_replacementIsNotSearchedForKeys() throws IOException {
+    final String expected = "ABAB";
+    final String input = "${a}${a}";
+    final Properties props = new Properties();
+    props.put("${a}", "AB");
+    props.put("${abcdefgh}", "X");
+
+    final PropertiesFilterReader fr = new PropertiesFilterReader(new StringReader(input), props);
+
+    final String actual = readToString(fr);
+
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void test_emptyReplacement() throws IOException {
+    final String expected = "Hello World!";
+    final String input = "Hello ${empty}${name}${empty}!";
+    final Properties props = new Properties();
+    props.put("${empty}", "");
+    props.put("${name}", "World");
+
+    final PropertiesFilterReader fr = new PropertiesFilterReader(new StringReader(input), props);
+
+    final String actual = readToString(fr);
+
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void test_noReplacements() throws IOException {
+    final String input = "Hello ${name}!";
+
+    final PropertiesFilterReader fr = new PropertiesFilterReader(new StringReader(input), new Properties());
+
+    assertEquals(input, readToString(fr));
+  }
+
+  @Test
+  public void test_ignoreCase() throws IOException {
+    final String expected = "Connect to Example.org:80, not ${HOSTNAME}";
+    final String input = "Connect to ${HOST}:${Port}, not ${HOSTNAME}";
+    final Properties props = new Properties();
+    props.put("${host}", "Example.org");
+    props.put("${port}", "80");
+
+    final PropertiesFilterReader fr = new PropertiesFilterReader(new StringReader(input), props, true);
+
+    final String actual = readToString(fr);
+
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void test_streamedValue() throws IOException {
+    final String value = createNonsense(10 * 1024);
+    final String expected = "<" + value + "><" + value + "><>";
+    final String input = "<${blob}><${blob}><${empty}>";
+    final List<Reader> opened = new ArrayList<>();
+    final Properties props = new Properties();
+    props.put("${blob}", streamedValue(value, opened));
+    props.put("${empty}", streamedValue("", opened));
+
+    final PropertiesFilterReader fr = new PropertiesFilterReader(new StringReader(input), props);
+
+    final StringBuilder actual = new StringBuilder();
+    final char[] buff = new char[100];
+    int len;
+    while ((len = fr.read(buff)) != -1)
+      actual.append(buff, 0, len);
+
+    assertEquals(expected, actual.toString());
+    assertEquals(3, opened.size());
+    for (Reader r : opened) {
+      try {
+        r.ready();
+        fail("Streamed value not closed");
+      } catch (IOException e) {
+        // Closed, as expected
+      }
+    }
+  }
+
+  @Test
+  public void test_streamedValue_simpleBuffer() throws IOException {
+    final String value = createNonsense(10 * 1024);
+    final List<Reader> opened = new ArrayList<>();
+    final Properties props = new Properties();
+    props.put("${blob}", streamedValue(value, opened));
+
+    final PropertiesFilterReader fr = new PropertiesFilterReader(new StringReader("<${blob}>"), props) {
+      @Override
+      protected ReplacementBuffer createBuffer() {
+        return new SimpleReplacementBuffer();
+      }
+    };
+
+    final char[] buff = new char[100];
+    assertEquals(100, fr.read(buff));
+    // Still being streamed, rather than read into memory and closed at once
+    assertTrue(opened.get(0).ready());
+    assertEquals("<" + value + ">", new String(buff) + readToString(fr));
+  }
+
+  @Test
+  public void test_lowLatency_returnsWhatIsAvailable() throws IOException {
+    final NonBlockingReader source = new NonBlockingReader();
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+
+    final PropertiesFilterReader fr = new PropertiesFilterReader(source, props);
+    fr.setLowLatency(true);
+    final char[] buff = new char[64];
+
+    source.write("Hello ${na");
+    assertTrue(fr.ready());
+    assertEquals("Hello ", String.valueOf(buff, 0, fr.read(buff)));
+    // The rest might still be a key
+    assertFalse(fr.ready());
+
+    source.write("me}!");
+    assertTrue(fr.ready());
+    assertEquals("World!", String.valueOf(buff, 0, fr.read(buff)));
+
+    source.write("${x");
+    source.close();
+    assertEquals("${x", String.valueOf(buff, 0, fr.read(buff)));
+    assertEquals(-1, fr.read(buff));
+  }
+
+  @Test
+  public void test_transferTo_equalsRead() throws IOException {
+    final Random rand = new Random(7);
+    final StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 20000; i++)
+      input.append("ab${}x".charAt(rand.nextInt(6)));
+    final Properties props = new Properties();
+    props.put("${a}", "[A]");
+    props.put("${ab}", "");
+    props.put("b${", "${a}");
+    props.put("x", "y");
+    props.put("${blob}", streamedValue(createNonsense(5000), new ArrayList<Reader>()));
+    input.append("${blob}");
+
+    final String expected = readToString(new PropertiesFilterReader(new StringReader(input.toString()), props));
+
+    final StringWriter writer = new StringWriter();
+    final PropertiesFilterReader fr = new PropertiesFilterReader(new StringReader(input.toString()), props);
+    assertEquals(expected.length(), fr.transferTo(writer));
+    assertEquals(expected, writer.toString());
+
+    final StringBuilder builder = new StringBuilder();
+    new PropertiesFilterReader(new StringReader(input.toString()), props).transferTo(builder);
+    assertEquals(expected, builder.toString());
+  }
+
+  @Test
+  public void test_transferTo_lowLatencyFlushesBeforeWaiting() throws IOException {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    final List<String> flushed = new ArrayList<>();
+    final StringWriter out = new StringWriter() {
+      @Override
+      public void flush() {
+        flushed.add(toString());
+      }
+    };
+
+    final PropertiesFilterReader fr = new PropertiesFilterReader(new PiecewiseReader("Hello ${na", "me}!"), props);
+    fr.setLowLatency(true);
+    fr.transferTo(out);
+
+    assertEquals("Hello World!", out.toString());
+    assertEquals("Hello ", flushed.get(0));
+  }
+
   // -- End of Tests -----------------------------------------------------------
   private String createNonsense(int length) {
     final Random rand = new Random();
@@ -108,6 +288,92 @@ public class PropertiesFilterReaderTest {
     return sb.toString();
   }
 
+  /**
+   * A source which only has what has been written to it so far and fails instead of blocking.
+   */
+  private static class NonBlockingReader extends Reader {
+    private final StringBuilder available = new StringBuilder();
+    private boolean closed;
+
+    public void write(String str) {
+      available.append(str);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      if (available.length() == 0) {
+        if (closed)
+          return -1;
+        throw new IllegalStateException("Read would block");
+      }
+
+      final int n = Math.min(len, available.length());
+      available.getChars(0, n, cbuf, off);
+      available.delete(0, n);
+      return n;
+    }
+
+    @Override
+    public boolean ready() {
+      return available.length() > 0 || closed;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  /**
+   * A source that delivers its pieces one after another and is only ready while there is something left of the current
+   * piece, as if it had to wait for the next one.
+   */
+  private static class PiecewiseReader extends Reader {
+    private final String[] pieces;
+    private int piece;
+    private int pos;
+
+    public PiecewiseReader(String... pieces) {
+      this.pieces = pieces;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      if (piece < pieces.length && pos == pieces[piece].length()) {
+        piece++;
+        pos = 0;
+      }
+      if (piece == pieces.length)
+        return -1;
+
+      final int n = Math.min(len, pieces[piece].length() - pos);
+      pieces[piece].getChars(pos, pos + n, cbuf, off);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public boolean ready() {
+      return piece < pieces.length && pos < pieces[piece].length();
+    }
+
+    @Override
+    public void close() {
+      piece = pieces.length;
+    }
+  }
+
+  private StreamedValue streamedValue(final String value, final List<Reader> opened) {
+    return new StreamedValue() {
+      @Override
+      public Reader open() {
+        final Reader r = new StringReader(value);
+        opened.add(r);
+        return r;
+      }
+    };
+  }
+
   private String readToString(Reader reader) throws IOException {
     try (Reader r = reader) {
       final StringBuilder sb = new StringBuilder();
@@ -0,0 +1,170 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class PropertiesRenderCacheTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Test
+  public void test_render_hitOnSecondRender() {
+    final PropertiesRenderCache cache = new PropertiesRenderCache(1024);
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+
+    assertEquals("Hello World!", cache.render("Hello ${name}!", props));
+    assertEquals("Hello World!", cache.render("Hello ${name}!", props));
+
+    assertEquals(1, cache.missCount());
+    assertEquals(1, cache.hitCount());
+  }
+
+  @Test
+  public void test_render_missOnChangedProperty() {
+    final PropertiesRenderCache cache = new PropertiesRenderCache(1024);
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    cache.render("Hello ${name}!", props);
+
+    props.put("${name}", "Universe");
+
+    assertEquals("Hello Universe!", cache.render("Hello ${name}!", props));
+    assertEquals(2, cache.missCount());
+  }
+
+  @Test
+  public void test_render_evictsLeastRecentlyUsed() {
+    final PropertiesRenderCache cache = new PropertiesRenderCache(10);
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+
+    cache.render("aaaa", props);
+    cache.render("bbbb", props);
+    cache.render("aaaa", props);
+    cache.render("cccc", props);
+
+    assertEquals(1, cache.evictionCount());
+    assertEquals(2, cache.entryCount());
+    assertEquals(8, cache.size());
+
+    cache.render("aaaa", props);
+    assertEquals(2, cache.hitCount());
+  }
+
+  @Test
+  public void test_render_withFile_missOnModification() throws IOException {
+    final File f = File.createTempFile(getClass().getSimpleName(), "txt");
+    try {
+      final PropertiesRenderCache cache = new PropertiesRenderCache(1024);
+      final Properties props = new Properties();
+      props.put("${name}", "World");
+
+      write(f, "Hello ${name}!");
+      assertEquals("Hello World!", cache.render(f, UTF_8, props));
+      assertEquals("Hello World!", cache.render(f, UTF_8, props));
+
+      write(f, "Bye ${name}!");
+      f.setLastModified(f.lastModified() + 2000);
+
+      assertEquals("Bye World!", cache.render(f, UTF_8, props));
+      assertEquals(2, cache.missCount());
+      assertEquals(1, cache.entryCount());
+    } finally {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void test_render_withFile_missOnModificationAndLengthChange() throws IOException {
+    final File f = File.createTempFile(getClass().getSimpleName(), "txt");
+    try {
+      final PropertiesRenderCache cache = new PropertiesRenderCache(1024);
+      final Properties props = new Properties();
+      props.put("${name}", "World");
+
+      // Both changes cancel each other out when they are folded into one number. The times are whole seconds, which
+      // every file system can store.
+      final String first = "Hello ${name}!";
+      final StringBuilder second = new StringBuilder("Bye ${name}!");
+      while (second.length() != (first.length() ^ 125))
+        second.append('!');
+      final long firstModified = 1000000000L;
+
+      write(f, first);
+      f.setLastModified(firstModified);
+      assertEquals("Hello World!", cache.render(f, UTF_8, props));
+
+      write(f, second.toString());
+      f.setLastModified(firstModified ^ ((first.length() ^ (long) second.length()) << 32));
+      assertEquals(second.toString().replace("${name}", "World"), cache.render(f, UTF_8, props));
+    } finally {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void test_render_withFile_charset() throws IOException {
+    final File f = File.createTempFile(getClass().getSimpleName(), "txt");
+    try {
+      final PropertiesRenderCache cache = new PropertiesRenderCache(1024);
+      final Properties props = new Properties();
+      props.put("${name}", "World");
+
+      write(f, "Gr\u00fc\u00dfe ${name}!");
+
+      assertEquals("Gr\u00fc\u00dfe World!", cache.render(f, UTF_8, props));
+      assertEquals("Gr\u00c3\u00bc\u00c3\u009fe World!", cache.render(f, Charset.forName("ISO-8859-1"), props));
+      assertEquals(2, cache.entryCount());
+    } finally {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void test_render_streamedValueIsNotReadForKey() {
+    final PropertiesRenderCache cache = new PropertiesRenderCache(1024);
+    final CountingValue value = new CountingValue("World");
+    final Properties props = new Properties();
+    props.put("${name}", value);
+
+    assertEquals("Hello World!", cache.render("Hello ${name}!", props));
+    final int opened = value.opened;
+    assertEquals("Hello World!", cache.render("Hello ${name}!", props));
+
+    assertEquals(1, cache.hitCount());
+    assertEquals(opened, value.opened);
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+  private void write(File f, String content) throws IOException {
+    try (Writer w = new OutputStreamWriter(new FileOutputStream(f), UTF_8)) {
+      w.write(content);
+    }
+  }
+
+  private static class CountingValue extends StreamedValue {
+    private final String value;
+    private int opened;
+
+    public CountingValue(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public Reader open() {
+      opened++;
+      return new StringReader(value);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ReplacementLayersTest {
+  @Test
+  public void test_stack_highestPriorityFirst() throws IOException {
+    final ReplacementLayers layers = new ReplacementLayers(Arrays.asList("${host}", "${port}", "${user}"));
+    final ReplacementLayers.Layer defaults = layers.layer(map("${host}", "localhost", "${port}", "80", "${user}",
+        "guest"));
+    final ReplacementLayers.Layer overrides = layers.layer(map("${user}", "admin"));
+
+    assertEquals("admin@localhost:80", filter("${user}@${host}:${port}", layers.stack(overrides, defaults)));
+    assertEquals("guest@localhost:80", filter("${user}@${host}:${port}", layers.stack(defaults, overrides)));
+  }
+
+  @Test
+  public void test_layer_sparse() {
+    final List<String> keys = new ArrayList<>();
+    for (int i = 0; i < 100; i++)
+      keys.add("${key" + i + "}");
+    final ReplacementLayers layers = new ReplacementLayers(keys);
+
+    final ReplacementLayers.Layer layer = layers.layer(map("${key42}", "a", "${key7}", "b", "${unknown}", "c"));
+
+    assertTrue(layer.toString().contains("sparse"));
+    assertEquals("a", layer.valueOf(layers.keyId("${key42}")));
+    assertEquals("b", layer.valueOf(layers.keyId("${key7}")));
+    assertNull(layer.valueOf(layers.keyId("${key8}")));
+  }
+
+  @Test
+  public void test_keyId() {
+    final ReplacementLayers layers = new ReplacementLayers(Arrays.asList("${a}", "${ab}"));
+
+    assertEquals("${ab}", layers.matcher().key(layers.keyId("${ab}")));
+    assertEquals(-1, layers.keyId("${a"));
+    assertEquals(-1, layers.keyId("${a}b"));
+    assertEquals(-1, layers.keyId(""));
+  }
+
+  @Test
+  public void test_stack_missingValueIsLeft() throws IOException {
+    final ReplacementLayers layers = new ReplacementLayers(Arrays.asList("${a}", "${b}"));
+
+    assertEquals("1 ${b}", filter("${a} ${b}", layers.stack(layers.layer(map("${a}", "1")))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_stack_foreignLayer() {
+    final ReplacementLayers layers = new ReplacementLayers(Arrays.asList("${a}"));
+    final ReplacementLayers other = new ReplacementLayers(Arrays.asList("${a}"));
+
+    layers.stack(other.layer(map("${a}", "1")));
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+
+  private Map<Object, Object> map(Object... keysAndValues) {
+    final Map<Object, Object> map = new HashMap<>();
+    for (int i = 0; i < keysAndValues.length; i += 2)
+      map.put(keysAndValues[i], keysAndValues[i + 1]);
+
+    return map;
+  }
+
+  private String filter(String input, Replacements replacements) throws IOException {
+    final StringWriter out = new StringWriter();
+    try (PropertiesFilterReader r = new PropertiesFilterReader(new StringReader(input), replacements)) {
+      r.transferTo(out);
+    }
+
+    return out.toString();
+  }
+}
@@ -0,0 +1,126 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+public class ReplacementRegistryTest {
+  @Test
+  public void test_snapshotIsImmutable() {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    final ReplacementRegistry registry = new ReplacementRegistry(props, new CollectingExecutor());
+
+    final ReplacementRegistry.Snapshot before = registry.snapshot();
+    registry.put("${name}", "Universe");
+
+    assertSame(before, registry.snapshot());
+    assertEquals("World", before.valueOf(before.matcher().match("${name}", 0)));
+  }
+
+  @Test
+  public void test_changesAreCombinedIntoOneRebuild() {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    final CollectingExecutor executor = new CollectingExecutor();
+    final ReplacementRegistry registry = new ReplacementRegistry(props, executor);
+
+    registry.put("${name}", "Universe");
+    registry.put("${greeting}", "Hello");
+    registry.remove("${name}");
+    executor.runAll();
+
+    final ReplacementRegistry.Snapshot snapshot = registry.snapshot();
+    assertEquals(3, snapshot.version());
+    assertEquals(1, snapshot.matcher().keyCount());
+    assertEquals("Hello", snapshot.valueOf(snapshot.matcher().match("${greeting}", 0)));
+  }
+
+  @Test
+  public void test_readerPicksUpNewSnapshot() throws IOException {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    final CollectingExecutor executor = new CollectingExecutor();
+    final ReplacementRegistry registry = new ReplacementRegistry(props, executor);
+    final PropertiesFilterReader fr = new PropertiesFilterReader(new StringReader("${name}, ${name}, ${longer}"),
+        registry);
+    final char[] buff = new char[64];
+
+    final int len = fr.read(buff, 0, 7);
+    registry.put("${name}", "Universe");
+    registry.put("${longer}", "!");
+    executor.runAll();
+    final int len2 = fr.read(buff, len, buff.length - len);
+
+    assertEquals("World, Universe, !", new String(buff, 0, len + len2));
+  }
+
+  @Test
+  public void test_nullValueIsLeft() throws IOException {
+    final Map<Object, Object> replacements = new HashMap<>();
+    replacements.put("${name}", "World");
+    replacements.put("${missing}", null);
+    final CollectingExecutor executor = new CollectingExecutor();
+    final ReplacementRegistry registry = new ReplacementRegistry(replacements, executor);
+    final char[] buff = new char[64];
+
+    final int len = new PropertiesFilterReader(new StringReader("${name} ${missing}"), registry).read(buff);
+    registry.put("${name}", null);
+    executor.runAll();
+
+    assertEquals("World ${missing}", new String(buff, 0, len));
+    assertEquals(0, registry.snapshot().matcher().keyCount());
+  }
+
+  @Test
+  public void test_rejectedRebuildIsScheduledAgain() {
+    final Properties props = new Properties();
+    props.put("${name}", "World");
+    final CollectingExecutor executor = new CollectingExecutor();
+    final ReplacementRegistry registry = new ReplacementRegistry(props, executor);
+
+    executor.rejecting = true;
+    try {
+      registry.put("${name}", "Universe");
+      fail("Rebuild was not rejected");
+    } catch (RejectedExecutionException e) {
+      // Expected
+    }
+    executor.rejecting = false;
+    registry.put("${greeting}", "Hello");
+    executor.runAll();
+
+    final ReplacementRegistry.Snapshot snapshot = registry.snapshot();
+    assertEquals("Universe", snapshot.valueOf(snapshot.matcher().match("${name}", 0)));
+    assertEquals("Hello", snapshot.valueOf(snapshot.matcher().match("${greeting}", 0)));
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+  private static class CollectingExecutor implements Executor {
+    private final List<Runnable> tasks = new ArrayList<>();
+    private boolean rejecting;
+
+    @Override
+    public void execute(Runnable command) {
+      if (rejecting)
+        throw new RejectedExecutionException("Shut down");
+      tasks.add(command);
+    }
+
+    public void runAll() {
+      for (Runnable r : tasks)
+        r.run();
+      tasks.clear();
+    }
+  }
+}
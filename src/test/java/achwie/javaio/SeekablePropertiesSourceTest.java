@@ -0,0 +1,114 @@
+package achwie.javaio;
+
+import static java.lang.String.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class SeekablePropertiesSourceTest {
+  @Test
+  public void test_openAt_everyOffset() throws IOException {
+    final Properties props = createProperties();
+    final String input = "a${a}${a}b${long}c ${l}${a} end";
+    final String expected = readToString(new PropertiesFilterReader(new StringReader(input), props));
+
+    final SeekablePropertiesSource source = SeekablePropertiesSource.forString(input, props, 3);
+
+    assertEquals(expected.length(), source.length());
+    for (int i = 0; i <= expected.length(); i++)
+      assertEquals(format("Offset %d", i), expected.substring(i), readToString(source.openAt(i)));
+  }
+
+  @Test
+  public void test_openAt_withFile() throws IOException {
+    final Properties props = createProperties();
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 2000; i++)
+      sb.append(i % 7 == 0 ? "${long}" : i % 5 == 0 ? "\u00e4\ud83d\ude00" : "line " + i + " ${a}\n");
+    final String input = sb.toString();
+    final String expected = readToString(new PropertiesFilterReader(new StringReader(input), props));
+
+    final File f = File.createTempFile(getClass().getSimpleName(), "txt");
+    try {
+      final Charset utf8 = Charset.forName("UTF-8");
+      try (Writer w = new OutputStreamWriter(new FileOutputStream(f), utf8)) {
+        w.write(input);
+      }
+
+      final SeekablePropertiesSource source = SeekablePropertiesSource.forFile(f, utf8, props, 100);
+
+      assertEquals(expected.length(), source.length());
+      assertTrue(source.checkpointCount() > 1);
+      for (int i = 0; i <= expected.length(); i += 997)
+        assertEquals(format("Offset %d", i), expected.substring(i), readToString(source.openAt(i)));
+    } finally {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void test_openAt_emptySource() throws IOException {
+    final SeekablePropertiesSource source = SeekablePropertiesSource.forString("", createProperties(), 3);
+
+    assertEquals(0, source.length());
+    assertEquals("", readToString(source.openAt(0)));
+  }
+  @Test
+  public void test_openAt_insideStreamedValue() throws IOException {
+    final Properties props = createProperties();
+    props.put("${streamed}", new StreamedValue() {
+      @Override
+      public Reader open() {
+        return new StringReader("0123456789abcdefghij");
+      }
+    });
+    final String input = "a${streamed}b${a}${streamed}";
+    final String expected = readToString(new PropertiesFilterReader(new StringReader(input), props));
+
+    final SeekablePropertiesSource source = SeekablePropertiesSource.forString(input, props, 3);
+
+    assertEquals(expected.length(), source.length());
+    for (int i = 0; i <= expected.length(); i++)
+      assertEquals(format("Offset %d", i), expected.substring(i), readToString(source.openAt(i)));
+  }
+
+  @Test
+  public void test_openAt_noReplacements() throws IOException {
+    final SeekablePropertiesSource source = SeekablePropertiesSource.forString("Hello world", new Properties(), 4);
+
+    assertEquals(11, source.length());
+    for (int i = 0; i <= 11; i++)
+      assertEquals(format("Offset %d", i), "Hello world".substring(i), readToString(source.openAt(i)));
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+  private Properties createProperties() {
+    final Properties props = new Properties();
+    props.put("${a}", "AB");
+    props.put("${l}", "");
+    props.put("${long}", "a rather long replacement");
+    return props;
+  }
+
+  private String readToString(Reader reader) throws IOException {
+    try (Reader r = reader) {
+      final StringBuilder sb = new StringBuilder();
+      final char[] buff = new char[4096];
+      int len;
+      while ((len = r.read(buff)) != -1)
+        sb.append(buff, 0, len);
+
+      return sb.toString();
+    }
+  }
+}
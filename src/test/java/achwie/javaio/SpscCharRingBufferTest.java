@@ -0,0 +1,122 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import achwie.javaio.SpscCharRingBuffer.WaitStrategy;
+
+public class SpscCharRingBufferTest {
+  @Test
+  public void test_capacity_roundedUpToPowerOfTwo() {
+    assertEquals(16, new SpscCharRingBuffer(10, WaitStrategy.SPIN).capacity());
+  }
+
+  @Test
+  public void test_offer_full() {
+    final SpscCharRingBuffer ring = new SpscCharRingBuffer(4, WaitStrategy.SPIN);
+
+    assertEquals(4, ring.offer("John Doe".toCharArray(), 0, 8));
+    assertEquals(0, ring.offer("X".toCharArray(), 0, 1));
+    assertEquals(4, ring.size());
+  }
+
+  @Test
+  public void test_poll_wrapsAround() {
+    final SpscCharRingBuffer ring = new SpscCharRingBuffer(4, WaitStrategy.SPIN);
+    final char[] dst = new char[4];
+
+    ring.offer("abc".toCharArray(), 0, 3);
+    assertEquals(2, ring.poll(dst, 0, 2));
+    assertEquals(3, ring.offer("def".toCharArray(), 0, 3));
+
+    assertEquals(4, ring.poll(dst, 0, 4));
+    assertEquals("cdef", new String(dst));
+  }
+
+  @Test
+  public void test_poll_emptyAndClosed() {
+    final SpscCharRingBuffer ring = new SpscCharRingBuffer(4, WaitStrategy.SPIN);
+    final char[] dst = new char[4];
+
+    assertEquals(0, ring.poll(dst, 0, 4));
+    ring.offer("ab".toCharArray(), 0, 2);
+    ring.close();
+
+    assertEquals(2, ring.poll(dst, 0, 4));
+    assertEquals(-1, ring.poll(dst, 0, 4));
+  }
+
+  @Test
+  public void test_transfer_spin() throws Exception {
+    // Spinning on a single core starves the other thread until the scheduler preempts it
+    assumeTrue(Runtime.getRuntime().availableProcessors() > 1);
+    assertTransfer(WaitStrategy.SPIN);
+  }
+
+  @Test
+  public void test_transfer_yield() throws Exception {
+    assertTransfer(WaitStrategy.YIELD);
+  }
+
+  @Test
+  public void test_transfer_park() throws Exception {
+    assertTransfer(WaitStrategy.PARK);
+  }
+
+  @Test(expected = InterruptedException.class)
+  public void test_take_interrupted() throws Exception {
+    final SpscCharRingBuffer ring = new SpscCharRingBuffer(4, WaitStrategy.PARK);
+
+    Thread.currentThread().interrupt();
+    ring.take(new char[4], 0, 4);
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+
+  /**
+   * Sends a known sequence of chars in ranges of varying sizes and checks that they arrive complete and in order.
+   */
+  private void assertTransfer(WaitStrategy waitStrategy) throws Exception {
+    final int total = 1000000;
+    final SpscCharRingBuffer ring = new SpscCharRingBuffer(64, waitStrategy);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    final Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          final char[] chars = new char[100];
+          int sent = 0;
+          while (sent < total) {
+            final int len = Math.min(total - sent, 1 + sent % chars.length);
+            for (int i = 0; i < len; i++)
+              chars[i] = (char) (sent + i);
+            ring.put(chars, 0, len);
+            sent += len;
+          }
+          ring.close();
+        } catch (Throwable e) {
+          failure.set(e);
+        }
+      }
+    });
+    producer.start();
+
+    final char[] chars = new char[37];
+    int received = 0;
+    int len;
+    while ((len = ring.take(chars, 0, chars.length)) != -1) {
+      for (int i = 0; i < len; i++)
+        assertEquals((char) (received + i), chars[i]);
+      received += len;
+    }
+
+    producer.join();
+    assertNull(failure.get());
+    assertEquals(total, received);
+  }
+}
@@ -0,0 +1,77 @@
+package achwie.javaio;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class StreamedValueTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Test
+  public void test_ofFile() throws IOException {
+    final File f = File.createTempFile(getClass().getSimpleName(), "txt");
+    try {
+      try (FileOutputStream out = new FileOutputStream(f)) {
+        out.write("-----BEGIN CERTIFICATE-----\n\u00e4\n".getBytes(UTF_8));
+      }
+      final Properties props = new Properties();
+      props.put("${certs}", StreamedValue.ofFile(f, UTF_8));
+
+      final Reader r = new PropertiesFilterReader(new StringReader("certs:\n${certs}end"), props);
+
+      assertEquals("certs:\n-----BEGIN CERTIFICATE-----\n\u00e4\nend", readToString(r));
+      assertEquals(30, ((StreamedValue) props.get("${certs}")).length());
+    } finally {
+      f.delete();
+    }
+  }
+
+  @Test
+  public void test_toString_doesNotRead() {
+    final CountingValue value = new CountingValue("value");
+
+    assertTrue(value.toString().startsWith("StreamedValue["));
+    assertEquals(0, value.opened);
+  }
+
+  @Test
+  public void test_fingerprint_differsByInstance() {
+    assertNotEquals(new CountingValue("value").fingerprint(), new CountingValue("value").fingerprint());
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+  private String readToString(Reader reader) throws IOException {
+    try (Reader r = reader) {
+      final StringBuilder sb = new StringBuilder();
+      final char[] buff = new char[4096];
+      int len;
+      while ((len = r.read(buff)) != -1)
+        sb.append(buff, 0, len);
+
+      return sb.toString();
+    }
+  }
+
+  private static class CountingValue extends StreamedValue {
+    private final String value;
+    private int opened;
+
+    public CountingValue(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public Reader open() {
+      opened++;
+      return new StringReader(value);
+    }
+  }
+}
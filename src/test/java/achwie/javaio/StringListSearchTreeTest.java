@@ -3,7 +3,11 @@ package achwie.javaio;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -13,6 +17,9 @@ import org.junit.Test;
  * 
  */
 public class StringListSearchTreeTest {
+  // Enough chars for dense child tables and one that doesn't fit into them
+  private static final String ALPHABET = "abcdefghi\u00e9";
+
   @Test
   public void test_entriesStartingWith() {
     final String str = "key1Search";
@@ -25,6 +32,137 @@ public class StringListSearchTreeTest {
     assertEquals("key1", actual.toString());
   }
 
+  @Test
+  public void test_startOf_withOffset() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("key1");
+    strings.add("key2");
+
+    final String actual = new StringListSearchTree(strings).startOf("Search key2", 7);
+
+    assertEquals("key2", actual);
+  }
+
+  @Test
+  public void test_startOf_partialMatchAtEnd() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("key1");
+    strings.add("key2");
+
+    assertNull(new StringListSearchTree(strings).startOf("Search ke", 7));
+    assertNull(new StringListSearchTree(strings).startOf("key3"));
+  }
+
+  @Test
+  public void test_startOf_longestOfNestedKeys() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("${a}");
+    strings.add("${a}b");
+    strings.add("${ab}");
+    Collections.sort(strings);
+
+    final StringListSearchTree tree = new StringListSearchTree(strings);
+
+    assertEquals("${a}b", tree.startOf("${a}bc"));
+    assertEquals("${a}", tree.startOf("${a}c"));
+    assertEquals("${ab}", tree.startOf("${ab}"));
+    assertNull(tree.startOf("${a"));
+  }
+
+  @Test
+  public void test_isKeyPrefix() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("${a}");
+    strings.add("${a}b");
+    strings.add("${ab}");
+    Collections.sort(strings);
+
+    final StringListSearchTree tree = new StringListSearchTree(strings);
+
+    assertTrue(tree.isKeyPrefix("", 0));
+    assertTrue(tree.isKeyPrefix("x$", 1));
+    assertTrue(tree.isKeyPrefix("${a", 0));
+    assertTrue(tree.isKeyPrefix("${a}", 0));
+    assertFalse(tree.isKeyPrefix("${a}b", 0));
+    assertFalse(tree.isKeyPrefix("${b", 0));
+    assertFalse(new StringListSearchTree(new ArrayList<String>()).isKeyPrefix("", 0));
+  }
+
+  @Test
+  public void test_startOf_denseAndSparseChildren() {
+    final List<String> strings = new ArrayList<>();
+    for (char ch = 32; ch < 122; ch++)
+      strings.add("k" + ch);
+    strings.add("k\u00e4");
+    strings.add("k\u20ac");
+
+    final StringListSearchTree tree = new StringListSearchTree(strings);
+
+    for (String str : strings)
+      assertEquals(str, tree.startOf(str + "tail"));
+    assertNull(tree.startOf("k\u00ff"));
+    assertNull(tree.startOf("k"));
+  }
+
+  @Test
+  public void test_startOf_emptyList() {
+    assertNull(new StringListSearchTree(new ArrayList<String>()).startOf("key"));
+  }
+
+  @Test
+  public void test_startOf_splitsNodes() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("abcdef");
+    strings.add("abcxyz");
+    strings.add("abd");
+    strings.add("b");
+
+    final StringListSearchTree tree = new StringListSearchTree(strings);
+
+    for (String str : strings)
+      assertEquals(str, tree.startOf(str));
+    assertNull(tree.startOf("abc"));
+    assertEquals(4, tree.keyCount());
+    assertEquals(6, tree.maxKeyLength());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_unsortedStrings() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("key2");
+    strings.add("key1");
+
+    new StringListSearchTree(strings);
+  }
+
+  @Test
+  public void test_startOf_ignoreCase() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("${Host}");
+    strings.add("${port}");
+    strings.add("${\u00c4}");
+    Collections.sort(strings, String.CASE_INSENSITIVE_ORDER);
+
+    final StringListSearchTree tree = new StringListSearchTree(strings, true);
+
+    assertEquals("${Host}", tree.startOf("${HOST}:"));
+    assertEquals("${Host}", tree.startOf("${host}"));
+    assertEquals("${port}", tree.startOf("${Port}"));
+    assertEquals("${\u00c4}", tree.startOf("${\u00e4}"));
+    assertNull(tree.startOf("${hos}"));
+    assertTrue(tree.isKeyPrefix("${HO", 0));
+    assertNull(new StringListSearchTree(strings).startOf("${host}"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_ignoreCase_stringsOnlyDifferingByCase() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("${HOST}");
+    strings.add("${host}");
+
+    new StringListSearchTree(strings, true);
+  }
+
   @Test
   public void test_treeIsFlattened() {
     final List<String> strings = new ArrayList<>();
@@ -35,4 +173,101 @@ public class StringListSearchTreeTest {
 
     assertTrue(tree.startsWith("Node[value: <key>, #children: 2]"));
   }
+
+  @Test
+  public void test_add_matchesLikeBuiltTree() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("This is exciting");
+    strings.add("This is great");
+    strings.add("This was awesome");
+    strings.add("This was wonderful");
+    strings.add("That");
+
+    final StringListSearchTree tree = new StringListSearchTree(new ArrayList<String>());
+    for (String str : strings)
+      assertEquals(strings.indexOf(str), tree.add(str));
+    assertEquals(1, tree.add("This is great"));
+
+    Collections.sort(strings);
+    assertEquals(new StringListSearchTree(strings).toString(), tree.toString());
+    assertEquals("This is great", tree.startOf("This is great!"));
+    assertEquals("That", tree.startOf("That is"));
+    assertTrue(tree.isKeyPrefix("This w", 0));
+    assertEquals(18, tree.maxKeyLength());
+  }
+
+  @Test
+  public void test_remove_keepsIds() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("key1");
+    strings.add("key12");
+    strings.add("key2");
+    final StringListSearchTree tree = new StringListSearchTree(strings);
+
+    assertTrue(tree.remove("key12"));
+    assertFalse(tree.remove("key12"));
+    assertFalse(tree.remove("key"));
+
+    assertEquals(2, tree.size());
+    assertEquals(3, tree.keyCount());
+    assertNull(tree.key(1));
+    assertEquals(2, tree.match("key2", 0));
+    assertEquals(0, tree.match("key12", 0));
+    assertEquals(4, tree.maxKeyLength());
+    assertEquals(3, tree.add("key12"));
+  }
+
+  @Test
+  public void test_remove_all() {
+    final List<String> strings = new ArrayList<>();
+    strings.add("key1");
+    strings.add("key2");
+    final StringListSearchTree tree = new StringListSearchTree(strings);
+
+    tree.remove("key1");
+    tree.remove("key2");
+
+    assertEquals(-1, tree.match("key1", 0));
+    assertFalse(tree.isKeyPrefix("ke", 0));
+    assertEquals(0, tree.maxKeyLength());
+  }
+
+  @Test
+  public void test_addAndRemove_random() {
+    final Random random = new Random(3);
+    final StringListSearchTree tree = new StringListSearchTree(new ArrayList<String>());
+    final Set<String> expected = new HashSet<>();
+
+    for (int round = 0; round < 5000; round++) {
+      final String key = randomString(random, 1 + random.nextInt(4));
+      if (random.nextInt(3) == 0)
+        assertEquals(expected.remove(key), tree.remove(key));
+      else if (expected.add(key))
+        tree.add(key);
+
+      final String text = randomString(random, 8);
+      assertEquals(longestPrefix(expected, text), tree.startOf(text, 0));
+    }
+
+    assertEquals(expected.size(), tree.size());
+  }
+
+  // -- End of Tests -----------------------------------------------------------
+
+  private String randomString(Random random, int length) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++)
+      sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+
+    return sb.toString();
+  }
+
+  private String longestPrefix(Set<String> strings, String text) {
+    String longest = null;
+    for (String str : strings)
+      if (text.startsWith(str) && (longest == null || str.length() > longest.length()))
+        longest = str;
+
+    return longest;
+  }
 }